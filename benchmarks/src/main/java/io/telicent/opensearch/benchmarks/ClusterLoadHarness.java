@@ -0,0 +1,541 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.HttpHost;
+import org.opensearch.client.Request;
+import org.opensearch.client.Response;
+import org.opensearch.client.RestClient;
+import org.opensearch.testcontainers.OpensearchContainer;
+import org.testcontainers.images.builder.ImageFromDockerfile;
+import org.testcontainers.utility.DockerImageName;
+
+/**
+ * Measures the end to end cost of the synonyms on a single OpenSearch node: the time taken to open
+ * an index whose search analyzer loads a generated thesaurus, the memory taken by the map on the
+ * node, the time taken to reload it once the synonym index has changed and the latency of queries
+ * expanded with it under concurrent load. Each size of thesaurus gives a line of JSON on the
+ * standard output, so that runs against different releases can be compared.
+ *
+ * <p>A node with the plugin installed is started in a container, unless {@code harness.url} points
+ * to a running one. It is configured with system properties:
+ *
+ * <ul>
+ *   <li>{@code harness.rules}: comma separated sizes of thesauri, 10000,100000 by default
+ *   <li>{@code opensearch-version}: the version of the OpenSearch image, the one the harness is
+ *       built against by default
+ *   <li>{@code harness.plugin}: the plugin zip installed in the container, the one of the version
+ *       the harness is built against in target/releases by default
+ *   <li>{@code harness.heap}: heap of the node in the container, by default 1g per 500000 rules of
+ *       the largest thesaurus and 1g at least
+ *   <li>{@code harness.settings}: comma separated node settings, e.g.
+ *       plugins.synonyms.parallel_build=true
+ *   <li>{@code harness.documents}: number of documents searched, 10000 by default
+ *   <li>{@code harness.threads}: number of threads sending queries, 8 by default
+ *   <li>{@code harness.queries}: number of queries measured, 20000 by default, after a tenth as
+ *       many to warm up
+ *   <li>{@code harness.output}: a file the results are appended to as well
+ * </ul>
+ */
+public final class ClusterLoadHarness {
+
+    private static final String SYNONYMS = ".synonyms-bench";
+    private static final String DOCUMENTS = "bench_documents";
+    private static final String INSTALL_PLUGIN =
+            "/usr/share/opensearch/bin/opensearch-plugin install --batch file:///tmp/plugin.zip";
+
+    private static final long SEED = 42;
+    private static final int WORDS_PER_DOCUMENT = 12;
+    private static final int BULK_SIZE = 1000;
+    // building the largest maps takes a while
+    private static final int TIMEOUT_MILLIS = (int) TimeUnit.MINUTES.toMillis(10);
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final RestClient client;
+    private final String opensearchVersion;
+    private final int documents;
+    private final int threads;
+    private final int queries;
+
+    private ClusterLoadHarness(
+            RestClient client, String opensearchVersion, int documents, int threads, int queries) {
+        this.client = client;
+        this.opensearchVersion = opensearchVersion;
+        this.documents = documents;
+        this.threads = threads;
+        this.queries = queries;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Properties build = buildProperties();
+        final String version =
+                System.getProperty("opensearch-version", build.getProperty("opensearch.version"));
+        final String url = System.getProperty("harness.url");
+        final List<Integer> sizes = new ArrayList<>();
+        for (String size : System.getProperty("harness.rules", "10000,100000").split(",")) {
+            sizes.add(Integer.parseInt(size.trim()));
+        }
+        final String output = System.getProperty("harness.output");
+
+        OpensearchContainer<?> container = null;
+        final String address;
+        if (url == null) {
+            container = container(version, build.getProperty("plugin.version"), sizes);
+            log("Starting OpenSearch " + version + " with the plugin...");
+            container.start();
+            address = container.getHttpHostAddress();
+        } else {
+            address = url;
+        }
+
+        try (RestClient client =
+                RestClient.builder(HttpHost.create(address))
+                        .setRequestConfigCallback(
+                                config ->
+                                        config.setSocketTimeout(TIMEOUT_MILLIS)
+                                                .setConnectionRequestTimeout(TIMEOUT_MILLIS))
+                        .setHttpClientConfigCallback(
+                                http -> http.setMaxConnTotal(256).setMaxConnPerRoute(256))
+                        .build()) {
+            final ClusterLoadHarness harness =
+                    new ClusterLoadHarness(
+                            client,
+                            version,
+                            Integer.getInteger("harness.documents", 10000),
+                            Integer.getInteger("harness.threads", 8),
+                            Integer.getInteger("harness.queries", 20000));
+            for (int size : sizes) {
+                final String line = JSON.writeValueAsString(harness.run(size));
+                System.out.println(line);
+                if (output != null) {
+                    Files.writeString(
+                            Paths.get(output),
+                            line + System.lineSeparator(),
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.APPEND);
+                }
+            }
+        } finally {
+            if (container != null) {
+                container.stop();
+            }
+        }
+    }
+
+    /** The versions the harness is built against, filled in by Maven * */
+    private static Properties buildProperties() throws IOException {
+        final Properties build = new Properties();
+        try (InputStream in = ClusterLoadHarness.class.getResourceAsStream("harness.properties")) {
+            if (in != null) {
+                build.load(in);
+            }
+        }
+        return build;
+    }
+
+    /** A single node running the image of the given version with the plugin installed * */
+    private static OpensearchContainer<?> container(
+            String version, String pluginVersion, List<Integer> sizes) {
+        if (version == null) {
+            throw new IllegalArgumentException(
+                    "OpenSearch version unknown, set opensearch-version");
+        }
+        final String defaultPlugin =
+                pluginVersion == null
+                        ? null
+                        : "target/releases/SynonymsPlugin-" + pluginVersion + ".zip";
+        final String pluginPath = System.getProperty("harness.plugin", defaultPlugin);
+        if (pluginPath == null) {
+            throw new IllegalArgumentException("plugin version unknown, set harness.plugin");
+        }
+        final Path plugin = Paths.get(pluginPath);
+        if (!Files.exists(plugin)) {
+            throw new IllegalArgumentException(
+                    "plugin zip " + plugin.toAbsolutePath() + " not found, set harness.plugin");
+        }
+        final ImageFromDockerfile image =
+                new ImageFromDockerfile("telicent-synonyms-harness", false)
+                        .withFileFromPath("plugin.zip", plugin)
+                        .withDockerfileFromBuilder(
+                                builder ->
+                                        builder.from("opensearchproject/opensearch:" + version)
+                                                .copy("plugin.zip", "/tmp/plugin.zip")
+                                                .run(INSTALL_PLUGIN)
+                                                .build());
+        final OpensearchContainer<?> container =
+                new OpensearchContainer<>(
+                        DockerImageName.parse(image.get())
+                                .asCompatibleSubstituteFor("opensearchproject/opensearch"));
+        // the largest maps need about a gigabyte per 500K rules while being built
+        final int gigabytes = Math.max(1, (Collections.max(sizes) + 499_999) / 500_000);
+        final String heap = System.getProperty("harness.heap", gigabytes + "g");
+        container.withEnv("OPENSEARCH_JAVA_OPTS", "-Xms" + heap + " -Xmx" + heap);
+        final String settings = System.getProperty("harness.settings", "");
+        for (String setting : settings.split(",")) {
+            final int equals = setting.indexOf('=');
+            if (equals > 0) {
+                container.withEnv(
+                        setting.substring(0, equals).trim(), setting.substring(equals + 1).trim());
+            }
+        }
+        return container;
+    }
+
+    /** Measures a thesaurus of the given number of rules * */
+    private ObjectNode run(int rules) throws Exception {
+        final Thesaurus thesaurus = Thesaurus.generate(rules, SEED);
+        final List<String> vocabulary = vocabulary(thesaurus);
+        final ObjectNode result = JSON.createObjectNode();
+        result.put("timestamp", Instant.now().toString());
+        result.put("opensearch_version", opensearchVersion);
+        result.put("rules", rules);
+
+        deleteIndices();
+        log("Indexing " + rules + " rules...");
+        indexSynonyms(thesaurus);
+        final ObjectNode before = heap();
+
+        log("Opening the index using them...");
+        long start = System.nanoTime();
+        createDocumentsIndex();
+        result.put("index_open_ms", millisSince(start));
+        result.set("heap_before", before);
+        result.set("heap_after", heap());
+        result.set("map", mapStats());
+
+        // the map is restored from its snapshot, unless disabled
+        perform("POST", "/" + DOCUMENTS + "/_close", null);
+        start = System.nanoTime();
+        perform("POST", "/" + DOCUMENTS + "/_open?wait_for_active_shards=all", null);
+        waitForGreen(DOCUMENTS);
+        result.put("index_reopen_ms", millisSince(start));
+
+        log("Indexing " + documents + " documents...");
+        indexDocuments(vocabulary);
+
+        log("Sending " + queries + " queries on " + threads + " threads...");
+        result.set("queries", queries(vocabulary));
+
+        log("Reloading the synonyms...");
+        final Random random = new Random(SEED);
+        perform(
+                "POST",
+                "/" + SYNONYMS + "/_doc?refresh=true",
+                JSON.writeValueAsString(
+                        Map.of(
+                                "synonyms",
+                                List.of(
+                                        "harnessreload, "
+                                                + vocabulary.get(
+                                                        random.nextInt(vocabulary.size()))))));
+        // rebuilds the maps whose synonym index has changed in place
+        start = System.nanoTime();
+        perform("POST", "/_plugins/synonyms/_reload", null);
+        result.put("reload_ms", millisSince(start));
+        result.set("reloaded_map", mapStats());
+
+        deleteIndices();
+        return result;
+    }
+
+    /** The distinct words of the rules, which the documents and queries are made of * */
+    private static List<String> vocabulary(Thesaurus thesaurus) {
+        final Set<String> words = new LinkedHashSet<>();
+        for (String rule : thesaurus.rules()) {
+            for (String word : rule.split("[^a-z]+")) {
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+        }
+        return new ArrayList<>(words);
+    }
+
+    private void indexSynonyms(Thesaurus thesaurus) throws IOException {
+        perform("PUT", "/" + SYNONYMS, null);
+        final StringBuilder bulk = new StringBuilder();
+        int pending = 0;
+        for (List<String> document : thesaurus.documents()) {
+            bulk.append("{\"index\":{}}\n")
+                    .append(JSON.writeValueAsString(Map.of("synonyms", document)))
+                    .append('\n');
+            if (++pending == BULK_SIZE) {
+                bulk(SYNONYMS, bulk);
+                pending = 0;
+            }
+        }
+        bulk(SYNONYMS, bulk);
+        perform("POST", "/" + SYNONYMS + "/_refresh", null);
+    }
+
+    /** Creates the index searched, with the synonyms applied to its queries * */
+    private void createDocumentsIndex() throws IOException {
+        final String body =
+                "{\"settings\":{\"number_of_shards\":1,\"number_of_replicas\":0,"
+                        + "\"analysis\":{\"filter\":{\"synonyms\":{"
+                        + "\"type\":\"index_synonym_graph\",\"index\":\""
+                        + SYNONYMS
+                        + "\",\"fields\":[\"synonyms\"]}},"
+                        + "\"analyzer\":{\"with_synonyms\":{\"type\":\"custom\","
+                        + "\"tokenizer\":\"standard\",\"filter\":[\"lowercase\",\"synonyms\"]}}}},"
+                        + "\"mappings\":{\"properties\":{\"text\":{\"type\":\"text\","
+                        + "\"analyzer\":\"standard\",\"search_analyzer\":\"with_synonyms\"}}}}";
+        perform(
+                "PUT",
+                "/"
+                        + DOCUMENTS
+                        + "?wait_for_active_shards=all&timeout=10m&cluster_manager_timeout=10m",
+                body);
+        waitForGreen(DOCUMENTS);
+    }
+
+    private void indexDocuments(List<String> vocabulary) throws IOException {
+        final Random random = new Random(SEED);
+        final StringBuilder bulk = new StringBuilder();
+        for (int i = 0; i < documents; i++) {
+            bulk.append("{\"index\":{}}\n")
+                    .append(
+                            JSON.writeValueAsString(
+                                    Map.of(
+                                            "text",
+                                            words(vocabulary, random, WORDS_PER_DOCUMENT))))
+                    .append('\n');
+            if ((i + 1) % BULK_SIZE == 0) {
+                bulk(DOCUMENTS, bulk);
+            }
+        }
+        bulk(DOCUMENTS, bulk);
+        perform("POST", "/" + DOCUMENTS + "/_refresh", null);
+    }
+
+    private static String words(List<String> vocabulary, Random random, int count) {
+        final StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                words.append(' ');
+            }
+            words.append(vocabulary.get(random.nextInt(vocabulary.size())));
+        }
+        return words.toString();
+    }
+
+    /**
+     * Sends match queries of one to three words from the threads and measures their latency, the
+     * first tenth of them only warming up the node.
+     */
+    private ObjectNode queries(List<String> vocabulary) throws Exception {
+        final int warmup = queries / 10;
+        final Random random = new Random(SEED);
+        final String[] bodies = new String[warmup + queries];
+        for (int i = 0; i < bodies.length; i++) {
+            bodies[i] =
+                    JSON.writeValueAsString(
+                            Map.of(
+                                    "size",
+                                    10,
+                                    "query",
+                                    Map.of(
+                                            "match",
+                                            Map.of(
+                                                    "text",
+                                                    words(
+                                                            vocabulary,
+                                                            random,
+                                                            1 + random.nextInt(3))))));
+        }
+        final long[] latencies = new long[queries];
+        final AtomicInteger next = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final long start;
+        try {
+            runQueries(executor, bodies, 0, warmup, next, null);
+            start = System.nanoTime();
+            runQueries(executor, bodies, warmup, bodies.length, next, latencies);
+        } finally {
+            executor.shutdownNow();
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        final ObjectNode stats = JSON.createObjectNode();
+        stats.put("threads", threads);
+        stats.put("count", queries);
+        stats.put("p50_ms", percentile(latencies, 50));
+        stats.put("p90_ms", percentile(latencies, 90));
+        stats.put("p99_ms", percentile(latencies, 99));
+        stats.put("max_ms", latencies[latencies.length - 1] / 1e6);
+        stats.put("throughput_per_s", queries / (elapsed / 1e9));
+        return stats;
+    }
+
+    /** Sends the queries from one index to the other, recording their latency if asked to * */
+    private void runQueries(
+            ExecutorService executor,
+            String[] bodies,
+            int from,
+            int to,
+            AtomicInteger next,
+            long[] latencies)
+            throws Exception {
+        next.set(from);
+        final List<Future<?>> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            workers.add(
+                    executor.submit(
+                            () -> {
+                                for (int i = next.getAndIncrement();
+                                        i < to;
+                                        i = next.getAndIncrement()) {
+                                    final long start = System.nanoTime();
+                                    perform("POST", "/" + DOCUMENTS + "/_search", bodies[i]);
+                                    if (latencies != null) {
+                                        latencies[i - from] = System.nanoTime() - start;
+                                    }
+                                }
+                                return null;
+                            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+    }
+
+    private static double percentile(long[] sorted, int percentile) {
+        final int rank = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, rank)] / 1e6;
+    }
+
+    /** Heap used by each node, as reported by the node stats * */
+    private ObjectNode heap() throws IOException {
+        final ObjectNode heap = JSON.createObjectNode();
+        final Iterator<Map.Entry<String, JsonNode>> nodes =
+                perform("GET", "/_nodes/stats/jvm", null).path("nodes").fields();
+        while (nodes.hasNext()) {
+            final JsonNode node = nodes.next().getValue();
+            heap.put(
+                    node.path("name").asText(),
+                    node.path("jvm").path("mem").path("heap_used_in_bytes").asLong());
+        }
+        return heap;
+    }
+
+    /**
+     * The figures the stats endpoint of the plugin gives for the map of the synonym index on each
+     * node, along with the size of all the maps and the estimate of the breaker.
+     */
+    private ArrayNode mapStats() throws IOException {
+        final ArrayNode stats = JSON.createArrayNode();
+        final Iterator<Map.Entry<String, JsonNode>> nodes =
+                perform("GET", "/_plugins/synonyms/_stats", null).path("nodes").fields();
+        while (nodes.hasNext()) {
+            final JsonNode node = nodes.next().getValue();
+            final ObjectNode figures = stats.addObject();
+            figures.put("node", node.path("name").asText());
+            figures.put("maps_size_in_bytes", node.path("size_in_bytes").asLong());
+            figures.put(
+                    "breaker_estimated_size_in_bytes",
+                    node.path("breaker").path("estimated_size_in_bytes").asLong());
+            for (JsonNode map : node.path("maps")) {
+                if (SYNONYMS.equals(map.path("index").asText())) {
+                    for (String field :
+                            List.of(
+                                    "version",
+                                    "restored",
+                                    "rules",
+                                    "words",
+                                    "fst_size_in_bytes",
+                                    "words_size_in_bytes",
+                                    "load_time_in_millis",
+                                    "build_time_in_millis",
+                                    "reloads")) {
+                        if (map.has(field)) {
+                            figures.set(field, map.get(field));
+                        }
+                    }
+                }
+            }
+        }
+        return stats;
+    }
+
+    private void deleteIndices() throws IOException {
+        perform("DELETE", "/" + DOCUMENTS + "," + SYNONYMS + "?ignore_unavailable=true", null);
+    }
+
+    private void waitForGreen(String index) throws IOException {
+        final JsonNode health =
+                perform(
+                        "GET",
+                        "/_cluster/health/" + index + "?wait_for_status=green&timeout=10m",
+                        null);
+        if (health.path("timed_out").asBoolean()) {
+            throw new IllegalStateException("index " + index + " did not turn green");
+        }
+    }
+
+    private void bulk(String index, StringBuilder bulk) throws IOException {
+        if (bulk.length() == 0) {
+            return;
+        }
+        final JsonNode response = perform("POST", "/" + index + "/_bulk", bulk.toString());
+        bulk.setLength(0);
+        if (response.path("errors").asBoolean()) {
+            throw new IllegalStateException("bulk indexing into " + index + " failed: " + response);
+        }
+    }
+
+    private JsonNode perform(String method, String endpoint, String body) throws IOException {
+        final Request request = new Request(method, endpoint);
+        if (body != null) {
+            request.setJsonEntity(body);
+        }
+        final Response response = client.performRequest(request);
+        if (response.getEntity() == null) {
+            return JSON.createObjectNode();
+        }
+        try (InputStream content = response.getEntity().getContent()) {
+            return JSON.readTree(content);
+        }
+    }
+
+    private static long millisSince(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /** Progress goes to the standard error, the results alone to the standard output * */
+    private static void log(String message) {
+        System.err.println(message);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch.benchmarks;
+
+import io.telicent.opensearch.IndexedSynonymParser;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how fast thesauri of different sizes are turned into synonym maps, from the pages
+ * returned by the loader to the FST, and how much memory the resulting maps take. Run with {@code
+ * -prof gc} to also get the heap allocated per build.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class SynonymBuildBenchmark {
+
+    @Param({"10000", "100000"})
+    public int rules;
+
+    @Param({"true", "false"})
+    public boolean expand;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private Thesaurus thesaurus;
+    private Analyzer analyzer;
+    private ExecutorService executor;
+
+    /** Size of the map built by the last invocation, reported per rule of the thesaurus */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+        public double fstBytesPerRule;
+        public double wordBytesPerRule;
+        public double rulesPerSecond;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        thesaurus = Thesaurus.generate(rules, 42);
+        analyzer = new StandardAnalyzer();
+        if (parallelism > 1) {
+            executor = Executors.newFixedThreadPool(parallelism);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        analyzer.close();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public SynonymMap build(Footprint footprint) throws Exception {
+        final long start = System.nanoTime();
+        final IndexedSynonymParser parser =
+                new IndexedSynonymParser(
+                        thesaurus,
+                        "synonyms",
+                        null,
+                        new String[0],
+                        IndexedSynonymParser.DEFAULT_PAGE_SIZE,
+                        expand,
+                        true,
+                        false,
+                        analyzer,
+                        executor,
+                        parallelism);
+        parser.parse();
+        if (parser.loadFailure() != null) {
+            throw new IllegalStateException("invalid thesaurus", parser.loadFailure());
+        }
+        final SynonymMap map = parser.build();
+        final long elapsed = System.nanoTime() - start;
+
+        footprint.rulesPerSecond = thesaurus.size() * 1e9 / elapsed;
+        footprint.fstBytesPerRule = (double) map.fst.ramBytesUsed() / thesaurus.size();
+        footprint.wordBytesPerRule = (double) map.words.ramBytesUsed() / thesaurus.size();
+        return map;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch.benchmarks;
+
+import io.telicent.opensearch.IndexedSynonymParser;
+import io.telicent.opensearch.ReloadableSynonymGraphFilter;
+import io.telicent.opensearch.ReloadableSynonymMap;
+import io.telicent.opensearch.SynonymMapCache;
+import io.telicent.opensearch.SynonymMapSnapshots;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.opensearch.core.index.Index;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the latency of analysing a query with the synonym filter, as done at search time, for
+ * short and long queries and with the rules expanded or not. Half the words of the queries appear
+ * in the thesaurus. The same queries come back in a loop, so with a cache of expansions large
+ * enough they are all replayed from it once warmed up.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SynonymQueryBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({"100000"})
+    public int rules;
+
+    @Param({"true", "false"})
+    public boolean expand;
+
+    @Param({"3", "30"})
+    public int queryLength;
+
+    @Param({"0", "10000"})
+    public int expansionCache;
+
+    private SynonymMapCache cache;
+    private Analyzer analyzer;
+    private String[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final Thesaurus thesaurus = Thesaurus.generate(rules, 42);
+        final ReloadableSynonymMap synonyms = load(thesaurus);
+
+        analyzer =
+                new Analyzer() {
+                    @Override
+                    protected TokenStreamComponents createComponents(String fieldName) {
+                        final Tokenizer tokenizer = new StandardTokenizer();
+                        final TokenStream stream = new LowerCaseFilter(tokenizer);
+                        return new TokenStreamComponents(
+                                tokenizer, new ReloadableSynonymGraphFilter(stream, synonyms));
+                    }
+                };
+
+        // mix words from the rules with words unknown to the thesaurus
+        final Random random = new Random(7);
+        final List<String> words = thesaurus.rules();
+        queries = new String[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            final StringBuilder query = new StringBuilder();
+            for (int w = 0; w < queryLength; w++) {
+                if (w > 0) {
+                    query.append(' ');
+                }
+                if (random.nextBoolean()) {
+                    final String rule = words.get(random.nextInt(words.size()));
+                    query.append(rule.split("\\s*(,|=>)\\s*")[0]);
+                } else {
+                    query.append("unknown").append(random.nextInt(1000));
+                }
+            }
+            queries[q] = query.toString();
+        }
+    }
+
+    /** Builds the map through the node cache, as the token filter factory does */
+    private ReloadableSynonymMap load(Thesaurus thesaurus) throws Exception {
+        cache = new SynonymMapCache(SynonymMapSnapshots.NONE, expansionCache);
+        final Analyzer parsing = new StandardAnalyzer();
+        return cache.acquire(
+                new SynonymMapCache.Key(
+                        "synonyms", List.of(), null, expand, false, true, "benchmark", null),
+                new Index("benchmark", "benchmark"),
+                new ReloadableSynonymMap.Source() {
+                    @Override
+                    public String version() {
+                        return thesaurus.version("synonyms", null);
+                    }
+
+                    @Override
+                    public SynonymMap build(ReloadableSynonymMap.BuildInfo info)
+                            throws Exception {
+                        final IndexedSynonymParser parser =
+                                new IndexedSynonymParser(
+                                        thesaurus,
+                                        "synonyms",
+                                        null,
+                                        new String[0],
+                                        IndexedSynonymParser.DEFAULT_PAGE_SIZE,
+                                        expand,
+                                        true,
+                                        false,
+                                        parsing);
+                        parser.parse();
+                        return parser.build();
+                    }
+                });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        analyzer.close();
+        cache.clear();
+    }
+
+    @Benchmark
+    public void analyze(Blackhole blackhole) throws IOException {
+        final String query = queries[next++ & (QUERIES - 1)];
+        try (TokenStream stream = analyzer.tokenStream("query", query)) {
+            final CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                blackhole.consume(term.length());
+            }
+            stream.end();
+        }
+    }
+}
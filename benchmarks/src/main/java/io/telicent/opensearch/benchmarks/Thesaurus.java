@@ -0,0 +1,102 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch.benchmarks;
+
+import io.telicent.opensearch.SynonymsLoader;
+import io.telicent.opensearch.SynonymsVersion;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic thesauri in the SOLR format and serves them in place of a synonym index, so
+ * that the benchmarks run without a cluster. The same size and seed always give the same rules.
+ */
+public final class Thesaurus implements SynonymsLoader {
+
+    // the rules are spread over documents holding this many rules each
+    private static final int RULES_PER_DOCUMENT = 10;
+
+    private final List<String> rules;
+
+    private Thesaurus(List<String> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Generates rules drawing their terms from a vocabulary a tenth of the size of the thesaurus,
+     * so that terms are shared across rules as they are in real thesauri. Two thirds of the rules
+     * are equivalences, the others explicit mappings, and a quarter of the terms are phrases.
+     */
+    public static Thesaurus generate(int size, long seed) {
+        final Random random = new Random(seed);
+        final String[] vocabulary = new String[Math.max(100, size / 10)];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = word(random);
+        }
+        final List<String> rules = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final StringBuilder rule = new StringBuilder();
+            final int terms = 2 + random.nextInt(3);
+            for (int t = 0; t < terms; t++) {
+                if (t > 0) {
+                    rule.append(i % 3 == 0 && t == terms - 1 ? " => " : ", ");
+                }
+                rule.append(vocabulary[random.nextInt(vocabulary.length)]);
+                if (random.nextInt(4) == 0) {
+                    rule.append(' ').append(vocabulary[random.nextInt(vocabulary.length)]);
+                }
+            }
+            rules.add(rule.toString());
+        }
+        return new Thesaurus(rules);
+    }
+
+    private static String word(Random random) {
+        final int length = 3 + random.nextInt(8);
+        final StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+
+    public List<String> rules() {
+        return rules;
+    }
+
+    public int size() {
+        return rules.size();
+    }
+
+    /** The rules grouped the way they would be stored in a synonym index * */
+    public List<List<String>> documents() {
+        final List<List<String>> documents = new ArrayList<>();
+        for (int from = 0; from < rules.size(); from += RULES_PER_DOCUMENT) {
+            documents.add(rules.subList(from, Math.min(from + RULES_PER_DOCUMENT, rules.size())));
+        }
+        return documents;
+    }
+
+    @Override
+    public String version(String index, String query) {
+        final int documents = (rules.size() + RULES_PER_DOCUMENT - 1) / RULES_PER_DOCUMENT;
+        return new SynonymsVersion.Shard("thesaurus", 0, documents, documents - 1, 1).toString();
+    }
+
+    @Override
+    public boolean load(
+            String index, String query, String[] fields, int pageSize, PageConsumer consumer)
+            throws Exception {
+        final int rulesPerPage = pageSize * RULES_PER_DOCUMENT;
+        for (int from = 0; from < rules.size(); from += rulesPerPage) {
+            consumer.accept(rules.subList(from, Math.min(from + rulesPerPage, rules.size())));
+        }
+        return true;
+    }
+}
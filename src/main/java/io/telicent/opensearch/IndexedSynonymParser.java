@@ -7,35 +7,25 @@
  */
 package io.telicent.opensearch;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.IOException;
-import java.io.StringReader;
-import java.util.Iterator;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Map.Entry;
-import javax.net.ssl.SSLContext;
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.conn.ssl.TrustAllStrategy;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
-import org.apache.http.ssl.SSLContextBuilder;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.synonym.SolrSynonymParser;
+import org.apache.lucene.analysis.synonym.SynonymMap;
 import org.apache.lucene.util.CharsRef;
 import org.apache.lucene.util.CharsRefBuilder;
-import org.opensearch.client.RestClient;
-import org.opensearch.client.RestClientBuilder;
-import org.opensearch.client.json.jackson.JacksonJsonpMapper;
-import org.opensearch.client.opensearch.OpenSearchClient;
-import org.opensearch.client.opensearch.core.SearchResponse;
-import org.opensearch.client.opensearch.core.search.Hit;
-import org.opensearch.client.transport.OpenSearchTransport;
-import org.opensearch.client.transport.rest_client.RestClientTransport;
+import org.opensearch.core.common.breaker.CircuitBreaker;
+import org.opensearch.core.common.breaker.CircuitBreakingException;
+import org.opensearch.core.common.breaker.NoopCircuitBreaker;
+import org.opensearch.index.IndexNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,32 +33,187 @@ import org.slf4j.LoggerFactory;
 public class IndexedSynonymParser extends SolrSynonymParser {
 
     private final boolean lenient;
+    private final boolean expand;
+    private final boolean dedup;
+    private final Analyzer analyzer;
 
+    private final SynonymsLoader loader;
     private final String index;
-    private final String host;
-    private final String username;
-    private final String password;
-    private final int port;
+    private final String query;
+    private final String[] fields;
+    private final int pageSize;
+
+    // analyses the rules in parallel when set
+    private final ExecutorService buildExecutor;
+    private final int parallelism;
+
+    // charged with the estimated size of the map while it is built
+    private final CircuitBreaker breaker;
+    private long estimatedBytes;
+    private long chargedBytes;
+
+    // only set on the parsers analysing a chunk of rules on behalf of another one
+    private final List<Mapping> recorded;
+    private Exception chunkFailure;
+
+    private Exception loadFailure;
+    // the rules rejected by check, up to MAX_INVALID_RULES of them
+    private final List<InvalidRule> invalidRules = new ArrayList<>();
+    private int invalidCount;
+    private int synonymsLoaded;
+    // terms which could not be analysed and were left out in lenient mode
+    private int lenientSkipped;
+    // a few of the distinct terms above, logged once the rules are parsed
+    private final List<String> skippedSamples = new ArrayList<>();
+
+    // the terms analysed so far, shared with the parsers working on behalf of this one
+    private final Map<String, Analysis> analysed;
+
+    /** Default number of documents fetched per page when loading the synonyms * */
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    /** Minimum number of rules handed to a worker when analysing them in parallel * */
+    static final int MIN_RULES_PER_TASK = 128;
+
+    /**
+     * Rough size of a mapping in the map builder on top of its characters: the entry of its input,
+     * the ordinal of its output and the entry of the output in the table of words
+     */
+    static final long BYTES_PER_MAPPING = 96;
+
+    /** Maximum number of invalid rules reported by {@link #check()} * */
+    public static final int MAX_INVALID_RULES = 1000;
+
+    /** Number of terms left out in lenient mode which are named in the logs * */
+    static final int MAX_SKIPPED_SAMPLES = 10;
+
+    // returned for the terms left out in lenient mode, never modified
+    private static final CharsRef SKIPPED = new CharsRef();
+
+    /** The outcome of analysing a term, either the term or the reason it could not be analysed */
+    private record Analysis(CharsRef term, String failure) {}
+
+    /** A rule which could not be parsed, along with the reason why * */
+    public record InvalidRule(String rule, String reason) {}
+
+    /** A rule once analysed, as added to the synonym map * */
+    public record Mapping(CharsRef input, CharsRef output, boolean includeOrig) {}
 
     private static final Logger logger = LoggerFactory.getLogger(IndexedSynonymParser.class);
 
+    /**
+     * Creates a parser which reads the rules from the given fields of the documents of an index
+     * matching the query, from all their top level fields if no field is given and from all the
+     * documents if the query is null.
+     */
     public IndexedSynonymParser(
-            String host,
-            int port,
-            String username,
-            String password,
+            SynonymsLoader loader,
             String index,
+            String query,
+            String[] fields,
+            int pageSize,
             boolean expand,
             boolean dedup,
             boolean lenient,
             Analyzer analyzer) {
+        this(loader, index, query, fields, pageSize, expand, dedup, lenient, analyzer, null, 1);
+    }
+
+    /**
+     * Creates a parser which analyses the rules of each page in parallel on the given executor,
+     * using up to parallelism tasks at a time. The resulting map is identical to the one built
+     * serially.
+     */
+    public IndexedSynonymParser(
+            SynonymsLoader loader,
+            String index,
+            String query,
+            String[] fields,
+            int pageSize,
+            boolean expand,
+            boolean dedup,
+            boolean lenient,
+            Analyzer analyzer,
+            ExecutorService buildExecutor,
+            int parallelism) {
+        this(
+                loader,
+                index,
+                query,
+                fields,
+                pageSize,
+                expand,
+                dedup,
+                lenient,
+                analyzer,
+                buildExecutor,
+                parallelism,
+                new NoopCircuitBreaker(IndexedSynonymsPlugin.BREAKER_NAME));
+    }
+
+    /**
+     * Same as above, with the estimated size of the map charged to the breaker as the rules are
+     * parsed. The breaker trips the parsing when the map would take too much memory, the charge is
+     * released once the map has been built.
+     */
+    public IndexedSynonymParser(
+            SynonymsLoader loader,
+            String index,
+            String query,
+            String[] fields,
+            int pageSize,
+            boolean expand,
+            boolean dedup,
+            boolean lenient,
+            Analyzer analyzer,
+            ExecutorService buildExecutor,
+            int parallelism,
+            CircuitBreaker breaker) {
         super(dedup, expand, analyzer);
         this.lenient = lenient;
+        this.expand = expand;
+        this.dedup = dedup;
+        this.analyzer = analyzer;
+        this.loader = loader;
         this.index = index;
-        this.host = host;
-        this.port = port;
-        this.username = username;
-        this.password = password;
+        this.query = query;
+        this.fields = fields;
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("page size must be positive, got " + pageSize);
+        }
+        this.pageSize = pageSize;
+        this.buildExecutor = buildExecutor;
+        this.parallelism = Math.max(1, parallelism);
+        this.breaker = breaker;
+        this.recorded = null;
+        this.analysed = buildExecutor == null ? new HashMap<>() : new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Creates a parser which records the mappings found in a chunk of rules, reusing the terms
+     * analysed by the given parser
+     */
+    private IndexedSynonymParser(
+            boolean expand,
+            boolean dedup,
+            boolean lenient,
+            Analyzer analyzer,
+            IndexedSynonymParser owner) {
+        super(dedup, expand, analyzer);
+        this.lenient = lenient;
+        this.expand = expand;
+        this.dedup = dedup;
+        this.analyzer = analyzer;
+        this.loader = null;
+        this.index = null;
+        this.query = null;
+        this.fields = null;
+        this.pageSize = DEFAULT_PAGE_SIZE;
+        this.buildExecutor = null;
+        this.parallelism = 1;
+        this.breaker = null;
+        this.recorded = new ArrayList<>();
+        this.analysed = owner.analysed;
     }
 
     @Override
@@ -86,106 +231,385 @@ public class IndexedSynonymParser extends SolrSynonymParser {
         // quietly ignore it. For more details on the control-flow see
         // SolrSynonymParser::addInternal.
         if (lenient == false || (input.length > 0 && output.length > 0)) {
-            super.add(input, output, includeOrig);
+            if (recorded != null) {
+                // replayed in order by the parser which owns the builder
+                recorded.add(new Mapping(input, output, includeOrig));
+            } else {
+                addToMap(input, output, includeOrig);
+            }
         }
     }
 
+    private void addToMap(CharsRef input, CharsRef output, boolean includeOrig) {
+        super.add(input, output, includeOrig);
+        estimatedBytes += 2L * (input.length + output.length) + BYTES_PER_MAPPING;
+    }
+
+    /** Charges the growth of the map since the last page to the breaker * */
+    private void account() {
+        if (estimatedBytes > chargedBytes) {
+            // nothing is charged when it trips
+            breaker.addEstimateBytesAndMaybeBreak(
+                    estimatedBytes - chargedBytes, "synonyms from index [" + index + "]");
+            chargedBytes = estimatedBytes;
+        }
+    }
+
+    /** Releases what was charged to the breaker for the map being built * */
+    private void release() {
+        if (chargedBytes > 0) {
+            breaker.addWithoutBreaking(-chargedBytes);
+            chargedBytes = 0;
+        }
+    }
+
+    /** Builds the map and releases its estimated size, the map being accounted for on its own * */
     @Override
-    public CharsRef analyze(String text, CharsRefBuilder reuse) throws IOException {
+    public SynonymMap build() throws IOException {
         try {
-            return super.analyze(text, reuse);
-        } catch (IllegalArgumentException ex) {
-            if (lenient) {
-                logger.info("Synonym rule for [" + text + "] was ignored");
-                return new CharsRef("");
-            } else {
-                throw ex;
+            return super.build();
+        } finally {
+            release();
+            analysed.clear();
+        }
+    }
+
+    /**
+     * Analyses a term once per build, the same words and phrases coming back across many rules. The
+     * terms which cannot be analysed are remembered as well and fail again straight away.
+     */
+    @Override
+    public CharsRef analyze(String text, CharsRefBuilder reuse) throws IOException {
+        Analysis analysis = analysed.get(text);
+        boolean first = false;
+        if (analysis == null) {
+            try {
+                // the builder is not kept, the map copies what it adds
+                analysis = new Analysis(CharsRef.deepCopyOf(super.analyze(text, reuse)), null);
+            } catch (IllegalArgumentException ex) {
+                analysis = new Analysis(null, ex.getMessage());
+            }
+            // another worker may have analysed it in the meantime
+            first = analysed.putIfAbsent(text, analysis) == null;
+        }
+        if (analysis.failure() == null) {
+            return analysis.term();
+        }
+        if (!lenient) {
+            throw new IllegalArgumentException(analysis.failure());
+        }
+        logger.debug("Synonym rule for [{}] was ignored: {}", text, analysis.failure());
+        lenientSkipped++;
+        if (first && skippedSamples.size() < MAX_SKIPPED_SAMPLES) {
+            skippedSamples.add(text);
+        }
+        return SKIPPED;
+    }
+
+    /** Counts the terms left out by a parser working on behalf of this one * */
+    private void addSkipped(IndexedSynonymParser worker) {
+        lenientSkipped += worker.lenientSkipped;
+        for (String sample : worker.skippedSamples) {
+            if (skippedSamples.size() < MAX_SKIPPED_SAMPLES) {
+                skippedSamples.add(sample);
             }
         }
     }
 
+    /**
+     * Logs a summary of the terms the parser left out in lenient mode, rather than one line per
+     * term
+     */
+    private void logSkipped(IndexedSynonymParser parser) {
+        if (parser.lenientSkipped > 0) {
+            logger.info(
+                    "{} terms could not be analysed and were left out of the synonyms from index {}, such as {}",
+                    parser.lenientSkipped,
+                    index,
+                    parser.skippedSamples);
+        }
+    }
+
+    /**
+     * Returns the version of the synonym documents, which changes whenever such documents are
+     * added, updated or deleted, or null if the index does not exist.
+     */
+    public String version() throws Exception {
+        return loader.version(index, query);
+    }
+
     public void parse() throws Exception {
+        try {
+            final boolean indexExists =
+                    loader.load(
+                            index,
+                            query,
+                            fields,
+                            pageSize,
+                            rules -> {
+                                parseRules(rules);
+                                account();
+                            });
+            if (!indexExists) {
+                // just leave a message to indicate that the index does not exist
+                // but don't crash everything just for that
+                logger.error("Could not find index for synonyms {}", index);
+                return;
+            }
 
-        // create a one-off client
-        final RestClient restClient;
-
-        // need credentials?
-        if (this.password != null && this.username != null) {
-
-            final CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-
-            credentialsProvider.setCredentials(
-                    AuthScope.ANY, new UsernamePasswordCredentials(this.username, this.password));
-
-            // Allow self-signed certificates
-            final SSLContext sslcontext =
-                    SSLContextBuilder.create()
-                            .loadTrustMaterial(null, new TrustAllStrategy())
-                            .build();
-
-            restClient =
-                    RestClient.builder(new HttpHost(this.host, this.port, "https"))
-                            .setHttpClientConfigCallback(
-                                    new RestClientBuilder.HttpClientConfigCallback() {
-                                        @Override
-                                        public HttpAsyncClientBuilder customizeHttpClient(
-                                                HttpAsyncClientBuilder httpClientBuilder) {
-                                            return httpClientBuilder
-                                                    .setDefaultCredentialsProvider(
-                                                            credentialsProvider)
-                                                    .setSSLContext(sslcontext);
-                                        }
-                                    })
-                            .build();
-        } else {
-            restClient = RestClient.builder(new HttpHost(this.host, this.port)).build();
-        }
-
-        final OpenSearchTransport transport =
-                new RestClientTransport(restClient, new JacksonJsonpMapper());
-        final OpenSearchClient client = new OpenSearchClient(transport);
-
-        final boolean indexExists = client.indices().exists(e -> e.index(index)).value();
-        if (!indexExists) {
-            // just leave a message to indicate that the index does not exist
-            // but don't crash everything just for that
-            logger.error("Could not find index for synonyms {}", index);
-            return;
+            logger.info("{} synonyms loaded from index {}", synonymsLoaded, index);
+            logSkipped(this);
+
+        } catch (CircuitBreakingException e) {
+            // not worth keeping what was loaded so far, the previous map stays
+            release();
+            throw e;
+        } catch (Exception e) {
+            logger.error("Exception caught when loading the synonyms from {}", index, e);
+            loadFailure = e;
         }
+    }
 
-        // get all the documents from the index
-        // assuming there are only a handful of documents
+    /**
+     * Parses the rules of the index like {@link #parse()}, but one at a time so that every invalid
+     * rule is found rather than stopping at the first one. Rules which only parse in lenient mode
+     * are reported as well, and added to the map as lenient mode would.
+     *
+     * @throws IndexNotFoundException if the synonym index does not exist
+     */
+    public void check() throws Exception {
         try {
-            int synonymsLoaded = 0;
-
-            SearchResponse<ObjectNode> response =
-                    client.search(s -> s.index(index), ObjectNode.class);
-
-            List<Hit<ObjectNode>> hits = response.hits().hits();
-            for (Hit<ObjectNode> hit : hits) {
-                // get the data from the source field
-                Iterator<Entry<String, JsonNode>> fieldsIter = hit.source().fields();
-                while (fieldsIter.hasNext()) {
-                    Entry<String, JsonNode> node = fieldsIter.next();
-                    if (node.getValue().isArray()) {
-                        Iterator<JsonNode> iter = ((ArrayNode) node.getValue()).iterator();
-                        while (iter.hasNext()) {
-                            super.parse(new StringReader(iter.next().asText()));
-                            synonymsLoaded++;
-                        }
-                    } else {
-                        super.parse(new StringReader(node.getValue().asText()));
-                        synonymsLoaded++;
+            if (!loader.load(
+                    index,
+                    query,
+                    fields,
+                    pageSize,
+                    rules -> {
+                        checkRules(rules);
+                        account();
+                    })) {
+                throw new IndexNotFoundException(index);
+            }
+        } catch (Exception e) {
+            release();
+            throw e;
+        }
+    }
+
+    /** Parses the given rules like {@link #check()}, rather than those of the index * */
+    public void check(List<String> rules) throws Exception {
+        try {
+            checkRules(rules);
+            account();
+        } catch (Exception e) {
+            release();
+            throw e;
+        }
+    }
+
+    private void checkRules(List<String> rules) throws Exception {
+        for (String rule : rules) {
+            final IndexedSynonymParser strict =
+                    new IndexedSynonymParser(expand, dedup, false, analyzer, this);
+            strict.parseChunk(List.of(rule));
+            IndexedSynonymParser accepted = strict;
+            if (strict.chunkFailure != null) {
+                invalidCount++;
+                if (invalidRules.size() < MAX_INVALID_RULES) {
+                    invalidRules.add(new InvalidRule(rule, reason(strict.chunkFailure)));
+                }
+                accepted = null;
+                if (lenient) {
+                    accepted = new IndexedSynonymParser(expand, dedup, true, analyzer, this);
+                    accepted.parseChunk(List.of(rule));
+                    addSkipped(accepted);
+                    if (accepted.chunkFailure != null) {
+                        // not a matter of analysis, lenient mode would fail as well
+                        accepted = null;
                     }
                 }
             }
+            if (accepted != null) {
+                for (Mapping mapping : accepted.recorded) {
+                    addToMap(mapping.input(), mapping.output(), mapping.includeOrig());
+                }
+            }
+            synonymsLoaded++;
+        }
+    }
 
-            logger.info("{} synonyms loaded from index {}", synonymsLoaded, index);
+    /** The parser wraps the actual error with the line it was found at, always 1 here * */
+    private static String reason(Exception e) {
+        final Throwable cause =
+                e instanceof ParseException && e.getCause() != null ? e.getCause() : e;
+        return cause.getMessage() == null ? cause.toString() : cause.getMessage();
+    }
+
+    /** Rules rejected by {@link #check()}, up to {@link #MAX_INVALID_RULES} of them * */
+    public List<InvalidRule> invalidRules() {
+        return invalidRules;
+    }
+
+    /** Total number of rules rejected by {@link #check()} * */
+    public int invalidCount() {
+        return invalidCount;
+    }
+
+    /**
+     * Analyses the rules of the documents written between two sequence numbers, provided they were
+     * all added rather than updated. The rules are returned instead of being added to the map.
+     * Sequence numbers are only ordered within a shard, so the synonym index must have a single
+     * one.
+     *
+     * @param added number of documents the synonym index has gained in the meantime
+     * @return null if some documents were updated or deleted rather than added, if the index does
+     *     not exist anymore or has several shards
+     */
+    public List<Mapping> additions(long afterSeqNo, long upToSeqNo, long added) throws Exception {
+        final String delta = deltaQuery(query, afterSeqNo, upToSeqNo);
+        // an update gives a document a new sequence number without changing
+        // the count, a deletion lowers the count: either way they do not add up
+        final String written = loader.version(index, delta);
+        final List<SynonymsVersion.Shard> shards = SynonymsVersion.parse(written);
+        if (shards == null || shards.size() != 1 || shards.get(0).count() != added) {
+            return null;
+        }
+        final IndexedSynonymParser recorder =
+                new IndexedSynonymParser(expand, dedup, lenient, analyzer, this);
+        if (!loader.load(index, delta, fields, pageSize, recorder::parseAll)) {
+            return null;
+        }
+        synonymsLoaded += recorder.synonymsLoaded;
+        addSkipped(recorder);
+        logger.info("{} synonyms added to index {}", recorder.synonymsLoaded, index);
+        logSkipped(recorder);
+        return recorder.recorded;
+    }
+
+    /** Restricts a query to the documents written between two sequence numbers * */
+    static String deltaQuery(String query, long afterSeqNo, long upToSeqNo) {
+        return "{\"bool\":{\"filter\":["
+                + (query == null ? "" : query + ",")
+                + "{\"range\":{\"_seq_no\":{\"gt\":"
+                + afterSeqNo
+                + ",\"lte\":"
+                + upToSeqNo
+                + "}}}]}}";
+    }
 
+    /** The exception which interrupted the last call to {@link #parse()}, if any * */
+    public Exception loadFailure() {
+        return loadFailure;
+    }
+
+    /** Number of rules parsed so far * */
+    public int synonymsLoaded() {
+        return synonymsLoaded;
+    }
+
+    /** Number of terms left out of the rules parsed so far because of lenient mode * */
+    public int lenientSkipped() {
+        return lenientSkipped;
+    }
+
+    /** Parses the rules found in a page of documents * */
+    private void parseRules(List<String> rules) throws Exception {
+        if (buildExecutor == null || rules.size() < 2 * MIN_RULES_PER_TASK) {
+            parseAll(rules);
+            return;
+        }
+
+        // analyse contiguous chunks of rules concurrently; the analyzer keeps
+        // its token streams per thread so each worker has its own chain
+        final int tasks = Math.min(parallelism, rules.size() / MIN_RULES_PER_TASK);
+        final int chunkSize = (rules.size() + tasks - 1) / tasks;
+        final List<Future<IndexedSynonymParser>> chunks = new ArrayList<>(tasks);
+        for (int from = 0; from < rules.size(); from += chunkSize) {
+            final List<String> chunk =
+                    rules.subList(from, Math.min(from + chunkSize, rules.size()));
+            chunks.add(
+                    buildExecutor.submit(
+                            () -> {
+                                IndexedSynonymParser worker =
+                                        new IndexedSynonymParser(
+                                                expand, dedup, lenient, analyzer, this);
+                                worker.parseChunk(chunk);
+                                return worker;
+                            }));
+        }
+
+        // merge in the original order so that the words get the same ordinals
+        // and the map is identical to the one built serially
+        try {
+            for (Future<IndexedSynonymParser> future : chunks) {
+                final IndexedSynonymParser worker = future.get();
+                for (Mapping mapping : worker.recorded) {
+                    addToMap(mapping.input(), mapping.output(), mapping.includeOrig());
+                }
+                synonymsLoaded += worker.synonymsLoaded;
+                addSkipped(worker);
+                if (worker.chunkFailure != null) {
+                    throw worker.chunkFailure;
+                }
+            }
+        } finally {
+            for (Future<IndexedSynonymParser> future : chunks) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /** Parses a chunk of rules, stopping at the first failure like the serial parsing * */
+    private void parseChunk(List<String> rules) {
+        try {
+            parseAll(rules);
         } catch (Exception e) {
-            logger.error("Exception caught when loading the synonyms from {}", index);
-        } finally { // close the index
-            client.shutdown();
+            chunkFailure = e;
+        }
+    }
+
+    /**
+     * Parses a list of rules as the lines of a single text, rather than one reader per rule, so
+     * that the parsing buffers are allocated once per list
+     */
+    private void parseAll(List<String> rules) throws IOException, ParseException {
+        super.parse(new RulesReader(rules));
+        synonymsLoaded += rules.size();
+    }
+
+    /** Reads a list of rules as if they were separated by line breaks * */
+    private static final class RulesReader extends Reader {
+        private final List<String> rules;
+        private int rule;
+        private int offset;
+
+        RulesReader(List<String> rules) {
+            this.rules = rules;
+        }
+
+        @Override
+        public int read(char[] buffer, int off, int len) {
+            if (rule >= rules.size()) {
+                return -1;
+            }
+            int read = 0;
+            while (read < len && rule < rules.size()) {
+                final String current = rules.get(rule);
+                if (offset < current.length()) {
+                    final int count = Math.min(len - read, current.length() - offset);
+                    current.getChars(offset, offset + count, buffer, off + read);
+                    offset += count;
+                    read += count;
+                } else {
+                    buffer[off + read++] = '\n';
+                    rule++;
+                    offset = 0;
+                }
+            }
+            return read;
         }
+
+        @Override
+        public void close() {}
     }
 }
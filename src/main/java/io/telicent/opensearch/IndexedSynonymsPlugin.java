@@ -9,28 +9,476 @@ package io.telicent.opensearch;
 
 import static org.opensearch.plugins.AnalysisPlugin.requiresAnalysisSettings;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.opensearch.action.ActionRequest;
+import org.opensearch.client.Client;
+import org.opensearch.cluster.metadata.IndexNameExpressionResolver;
+import org.opensearch.cluster.node.DiscoveryNodes;
+import org.opensearch.cluster.service.ClusterService;
+import org.opensearch.common.regex.Regex;
+import org.opensearch.common.settings.ClusterSettings;
+import org.opensearch.common.settings.IndexScopedSettings;
+import org.opensearch.common.settings.Setting;
+import org.opensearch.common.settings.Setting.Property;
 import org.opensearch.common.settings.Settings;
+import org.opensearch.common.settings.SettingsFilter;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.common.util.concurrent.OpenSearchExecutors;
+import org.opensearch.core.action.ActionResponse;
+import org.opensearch.core.common.breaker.CircuitBreaker;
+import org.opensearch.core.common.breaker.NoopCircuitBreaker;
+import org.opensearch.core.common.io.stream.NamedWriteableRegistry;
+import org.opensearch.core.common.unit.ByteSizeValue;
+import org.opensearch.core.index.Index;
+import org.opensearch.core.xcontent.NamedXContentRegistry;
+import org.opensearch.env.Environment;
+import org.opensearch.env.NodeEnvironment;
+import org.opensearch.index.IndexModule;
+import org.opensearch.index.IndexSettings;
 import org.opensearch.index.analysis.TokenFilterFactory;
+import org.opensearch.index.shard.IndexEventListener;
 import org.opensearch.indices.analysis.AnalysisModule.AnalysisProvider;
+import org.opensearch.indices.breaker.BreakerSettings;
+import org.opensearch.indices.cluster.IndicesClusterStateService.AllocatedIndices.IndexRemovalReason;
+import org.opensearch.plugins.ActionPlugin;
 import org.opensearch.plugins.AnalysisPlugin;
+import org.opensearch.plugins.CircuitBreakerPlugin;
 import org.opensearch.plugins.Plugin;
-import org.opensearch.plugins.ReloadablePlugin;
+import org.opensearch.repositories.RepositoriesService;
+import org.opensearch.rest.RestController;
+import org.opensearch.rest.RestHandler;
+import org.opensearch.script.ScriptService;
+import org.opensearch.threadpool.ExecutorBuilder;
+import org.opensearch.threadpool.FixedExecutorBuilder;
+import org.opensearch.threadpool.ScalingExecutorBuilder;
+import org.opensearch.threadpool.Scheduler.Cancellable;
+import org.opensearch.threadpool.ThreadPool;
+import org.opensearch.watcher.ResourceWatcherService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-public class IndexedSynonymsPlugin extends Plugin implements AnalysisPlugin, ReloadablePlugin {
+public class IndexedSynonymsPlugin extends Plugin
+        implements ActionPlugin, AnalysisPlugin, CircuitBreakerPlugin {
+
+    /** How often the synonym indices are checked for changes, disabled by default * */
+    public static final Setting<TimeValue> RELOAD_INTERVAL_SETTING =
+            Setting.timeSetting(
+                    "plugins.synonyms.reload_interval", TimeValue.MINUS_ONE, Property.NodeScope);
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexedSynonymsPlugin.class);
+
+    /** Whether compiled synonym maps are kept on the disk of the node * */
+    public static final Setting<Boolean> SNAPSHOTS_ENABLED_SETTING =
+            Setting.boolSetting("plugins.synonyms.snapshots.enabled", true, Property.NodeScope);
+
+    private static final String SNAPSHOTS_FOLDER = "telicent-synonyms";
+
+    private volatile SynonymMapCache synonymMapCache = new SynonymMapCache();
+
+    /** How long to wait for each request when loading synonyms from the cluster * */
+    public static final Setting<TimeValue> LOAD_TIMEOUT_SETTING =
+            Setting.positiveTimeSetting(
+                    "plugins.synonyms.load_timeout",
+                    TimeValue.timeValueSeconds(30),
+                    Property.NodeScope);
+
+    /** Whether the rules are analysed in parallel when building large synonym maps * */
+    public static final Setting<Boolean> PARALLEL_BUILD_SETTING =
+            Setting.boolSetting("plugins.synonyms.parallel_build", false, Property.NodeScope);
+
+    /** Thread pool analysing synonym rules in parallel * */
+    public static final String BUILD_THREAD_POOL = "synonyms_build";
+
+    /** Whether the synonym maps are loaded in the background by default * */
+    public static final Setting<Boolean> ASYNC_LOAD_SETTING =
+            Setting.boolSetting("plugins.synonyms.async_load", false, Property.NodeScope);
+
+    /** Number of query expansions cached per synonym map, disabled by default * */
+    public static final Setting<Integer> EXPANSION_CACHE_SIZE_SETTING =
+            Setting.intSetting("plugins.synonyms.expansion_cache.size", 0, 0, Property.NodeScope);
+
+    /**
+     * Number of rules added to a synonym index which are applied on top of its map, the map is
+     * rebuilt in the background beyond that. Disabled by default, any change causes a rebuild.
+     */
+    public static final Setting<Integer> OVERLAY_MAX_MAPPINGS_SETTING =
+            Setting.intSetting("plugins.synonyms.overlay.max_mappings", 0, 0, Property.NodeScope);
+
+    /**
+     * Whether each synonym map is built by a single data node and sent to the other ones, rather
+     * than built by every node
+     */
+    public static final Setting<Boolean> TRANSFER_ENABLED_SETTING =
+            Setting.boolSetting("plugins.synonyms.transfer.enabled", false, Property.NodeScope);
+
+    /** How long to wait for a connection to a remote synonym index * */
+    public static final Setting<TimeValue> REMOTE_CONNECT_TIMEOUT_SETTING =
+            Setting.positiveTimeSetting(
+                    "plugins.synonyms.remote.connect_timeout",
+                    TimeValue.timeValueSeconds(5),
+                    Property.NodeScope);
+
+    /** How long to wait for data from a remote synonym index * */
+    public static final Setting<TimeValue> REMOTE_SOCKET_TIMEOUT_SETTING =
+            Setting.positiveTimeSetting(
+                    "plugins.synonyms.remote.socket_timeout",
+                    TimeValue.timeValueSeconds(60),
+                    Property.NodeScope);
+
+    /** Maximum number of connections open to each remote cluster holding synonyms * */
+    public static final Setting<Integer> REMOTE_MAX_CONNECTIONS_SETTING =
+            Setting.intSetting(
+                    "plugins.synonyms.remote.max_connections", 10, 1, Property.NodeScope);
+
+    /** Number of times a request to a remote synonym index is tried again when it can be * */
+    public static final Setting<Integer> REMOTE_MAX_RETRIES_SETTING =
+            Setting.intSetting("plugins.synonyms.remote.max_retries", 3, 0, Property.NodeScope);
+
+    /** Wait before trying a request to a remote synonym index again, doubled every time * */
+    public static final Setting<TimeValue> REMOTE_RETRY_BACKOFF_SETTING =
+            Setting.positiveTimeSetting(
+                    "plugins.synonyms.remote.retry_backoff",
+                    TimeValue.timeValueMillis(500),
+                    Property.NodeScope);
+
+    /**
+     * PEM file of the certificate authorities trusted for the remote synonym clusters, relative to
+     * the config directory. The ones of the JVM are trusted when not set.
+     */
+    public static final Setting<String> REMOTE_SSL_CERTIFICATE_AUTHORITIES_SETTING =
+            Setting.simpleString(
+                    "plugins.synonyms.remote.ssl.certificate_authorities", Property.NodeScope);
+
+    /**
+     * Whether any certificate of the remote synonym clusters is accepted. Only meant for local
+     * testing against clusters with self-signed certificates.
+     */
+    public static final Setting<Boolean> REMOTE_SSL_TRUST_ALL_SETTING =
+            Setting.boolSetting("plugins.synonyms.remote.ssl.trust_all", false, Property.NodeScope);
+
+    /**
+     * Patterns of the local indices the synonyms can be loaded from. They are read with the
+     * privileges of the node, so that anyone allowed to create an index could otherwise read any
+     * other index through the rules.
+     */
+    public static final Setting<List<String>> ALLOWED_INDICES_SETTING =
+            Setting.listSetting(
+                    "plugins.synonyms.allowed_indices",
+                    List.of(".synonyms*"),
+                    Function.identity(),
+                    Property.NodeScope);
+
+    /**
+     * Patterns of the remote hosts, or host:port, the synonyms can be loaded from. None by default,
+     * so that index settings cannot make the node connect anywhere.
+     */
+    public static final Setting<List<String>> ALLOWED_HOSTS_SETTING =
+            Setting.listSetting(
+                    "plugins.synonyms.allowed_hosts",
+                    List.of(),
+                    Function.identity(),
+                    Property.NodeScope);
+
+    /** Name of the circuit breaker accounting for the memory taken by the synonym maps * */
+    public static final String BREAKER_NAME = "synonyms";
+
+    /**
+     * Memory the synonym maps of a node can take, including the ones being built, beyond which
+     * building a new one fails
+     */
+    public static final Setting<ByteSizeValue> BREAKER_LIMIT_SETTING =
+            Setting.memorySizeSetting("plugins.synonyms.breaker.limit", "10%", Property.NodeScope);
+
+    /** Thread pool loading synonym maps in the background * */
+    public static final String LOAD_THREAD_POOL = "synonyms_load";
+
+    private volatile Cancellable reloadTask;
+
+    // reads the synonym indices of the local cluster
+    private volatile SynonymsLoader localLoader;
+    // the clients of the remote clusters holding synonym indices
+    private volatile RestClientPool remoteClients;
+
+    // set when the rules are analysed in parallel
+    private volatile ExecutorService buildExecutor;
+    private int buildParallelism = 1;
+
+    private volatile ExecutorService loadExecutor;
+
+    private volatile List<String> allowedIndices =
+            ALLOWED_INDICES_SETTING.getDefault(Settings.EMPTY);
+    private volatile List<String> allowedHosts = List.of();
+
+    // set by the node before the components are created
+    private volatile CircuitBreaker breaker = new NoopCircuitBreaker(BREAKER_NAME);
+    private boolean asyncLoad;
+
+    @Override
+    public Collection<Object> createComponents(
+            Client client,
+            ClusterService clusterService,
+            ThreadPool threadPool,
+            ResourceWatcherService resourceWatcherService,
+            ScriptService scriptService,
+            NamedXContentRegistry xContentRegistry,
+            Environment environment,
+            NodeEnvironment nodeEnvironment,
+            NamedWriteableRegistry namedWriteableRegistry,
+            IndexNameExpressionResolver indexNameExpressionResolver,
+            Supplier<RepositoriesService> repositoriesServiceSupplier) {
+        allowedIndices = ALLOWED_INDICES_SETTING.get(environment.settings());
+        allowedHosts = ALLOWED_HOSTS_SETTING.get(environment.settings());
+        localLoader =
+                new NodeClientSynonymsLoader(
+                        client, LOAD_TIMEOUT_SETTING.get(environment.settings()), allowedIndices);
+        final String authorities =
+                REMOTE_SSL_CERTIFICATE_AUTHORITIES_SETTING.get(environment.settings());
+        final Path certificateAuthorities =
+                authorities.isEmpty() ? null : environment.configFile().resolve(authorities);
+        remoteClients =
+                new RestClientPool(
+                        REMOTE_CONNECT_TIMEOUT_SETTING.get(environment.settings()),
+                        REMOTE_SOCKET_TIMEOUT_SETTING.get(environment.settings()),
+                        REMOTE_MAX_CONNECTIONS_SETTING.get(environment.settings()),
+                        REMOTE_MAX_RETRIES_SETTING.get(environment.settings()),
+                        REMOTE_RETRY_BACKOFF_SETTING.get(environment.settings()),
+                        certificateAuthorities,
+                        REMOTE_SSL_TRUST_ALL_SETTING.get(environment.settings()));
+        loadExecutor = threadPool.executor(LOAD_THREAD_POOL);
+        asyncLoad = ASYNC_LOAD_SETTING.get(environment.settings());
+        if (PARALLEL_BUILD_SETTING.get(environment.settings())) {
+            buildParallelism = threadPool.info(BUILD_THREAD_POOL).getMax();
+            buildExecutor = threadPool.executor(BUILD_THREAD_POOL);
+        }
+        SynonymMapSnapshots snapshots = SynonymMapSnapshots.NONE;
+        if (SNAPSHOTS_ENABLED_SETTING.get(environment.settings())
+                && nodeEnvironment.hasNodeFile()) {
+            final Path path = nodeEnvironment.nodeDataPaths()[0].resolve(SNAPSHOTS_FOLDER);
+            try {
+                snapshots = SynonymMapSnapshots.open(path);
+            } catch (IOException e) {
+                logger.warn("Could not open synonym snapshots in {}, disabling them", path, e);
+            }
+        }
+        SynonymMapTransfer transfer = SynonymMapTransfer.NONE;
+        if (TRANSFER_ENABLED_SETTING.get(environment.settings())) {
+            final NodeClientSynonymMapTransfer nodeTransfer =
+                    new NodeClientSynonymMapTransfer(
+                            client,
+                            LOAD_TIMEOUT_SETTING.get(environment.settings()),
+                            key -> synonymMapCache.holders(key));
+            clusterService.addListener(nodeTransfer);
+            transfer = nodeTransfer;
+        }
+        synonymMapCache =
+                new SynonymMapCache(
+                        snapshots,
+                        transfer,
+                        breaker,
+                        EXPANSION_CACHE_SIZE_SETTING.get(environment.settings()),
+                        OVERLAY_MAX_MAPPINGS_SETTING.get(environment.settings()));
+        final TimeValue interval = RELOAD_INTERVAL_SETTING.get(environment.settings());
+        if (interval.millis() > 0) {
+            reloadTask =
+                    threadPool.scheduleWithFixedDelay(
+                            () -> synonymMapCache.reloadAll(loadExecutor),
+                            interval,
+                            ThreadPool.Names.GENERIC);
+        }
+        // made available to the transport actions
+        return List.of(synonymMapCache);
+    }
+
+    @Override
+    public BreakerSettings getCircuitBreaker(Settings settings) {
+        return new BreakerSettings(
+                BREAKER_NAME,
+                BREAKER_LIMIT_SETTING.get(settings).getBytes(),
+                1.0,
+                CircuitBreaker.Type.MEMORY,
+                CircuitBreaker.Durability.PERMANENT);
+    }
+
+    @Override
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.breaker = circuitBreaker;
+    }
+
+    CircuitBreaker breaker() {
+        return breaker;
+    }
+
+    @Override
+    public List<ActionHandler<? extends ActionRequest, ? extends ActionResponse>> getActions() {
+        return List.of(
+                new ActionHandler<>(
+                        SynonymsStatsAction.INSTANCE, TransportSynonymsStatsAction.class),
+                new ActionHandler<>(
+                        SynonymsCompileAction.INSTANCE, TransportSynonymsCompileAction.class),
+                new ActionHandler<>(
+                        SynonymsTransferAction.INSTANCE, TransportSynonymsTransferAction.class),
+                new ActionHandler<>(
+                        SynonymsReloadAction.INSTANCE, TransportSynonymsReloadAction.class));
+    }
+
+    @Override
+    public List<RestHandler> getRestHandlers(
+            Settings settings,
+            RestController restController,
+            ClusterSettings clusterSettings,
+            IndexScopedSettings indexScopedSettings,
+            SettingsFilter settingsFilter,
+            IndexNameExpressionResolver indexNameExpressionResolver,
+            Supplier<DiscoveryNodes> nodesInCluster) {
+        return List.of(
+                new RestSynonymsStatsAction(),
+                new RestSynonymsCompileAction(),
+                new RestSynonymsReloadAction());
+    }
+
+    @Override
+    public List<ExecutorBuilder<?>> getExecutorBuilders(Settings settings) {
+        final List<ExecutorBuilder<?>> builders = new ArrayList<>();
+        // loading is mostly spent waiting for the synonym index
+        builders.add(
+                new ScalingExecutorBuilder(
+                        LOAD_THREAD_POOL,
+                        1,
+                        4,
+                        TimeValue.timeValueMinutes(5),
+                        "thread_pool." + LOAD_THREAD_POOL));
+        // no threads are kept for the builds unless they are parallel
+        if (PARALLEL_BUILD_SETTING.get(settings)) {
+            builders.add(
+                    new FixedExecutorBuilder(
+                            settings,
+                            BUILD_THREAD_POOL,
+                            OpenSearchExecutors.allocatedProcessors(settings),
+                            -1,
+                            "thread_pool." + BUILD_THREAD_POOL));
+        }
+        return builders;
+    }
+
+    @Override
+    public List<Setting<?>> getSettings() {
+        return List.of(
+                RELOAD_INTERVAL_SETTING,
+                SNAPSHOTS_ENABLED_SETTING,
+                LOAD_TIMEOUT_SETTING,
+                PARALLEL_BUILD_SETTING,
+                ASYNC_LOAD_SETTING,
+                EXPANSION_CACHE_SIZE_SETTING,
+                OVERLAY_MAX_MAPPINGS_SETTING,
+                TRANSFER_ENABLED_SETTING,
+                REMOTE_CONNECT_TIMEOUT_SETTING,
+                REMOTE_SOCKET_TIMEOUT_SETTING,
+                REMOTE_MAX_CONNECTIONS_SETTING,
+                REMOTE_MAX_RETRIES_SETTING,
+                REMOTE_RETRY_BACKOFF_SETTING,
+                REMOTE_SSL_CERTIFICATE_AUTHORITIES_SETTING,
+                REMOTE_SSL_TRUST_ALL_SETTING,
+                ALLOWED_INDICES_SETTING,
+                ALLOWED_HOSTS_SETTING,
+                BREAKER_LIMIT_SETTING);
+    }
 
     @Override
     public Map<String, AnalysisProvider<TokenFilterFactory>> getTokenFilters() {
         final Map<String, AnalysisProvider<TokenFilterFactory>> filters = new TreeMap<>();
         filters.put(
                 "index_synonym_graph",
-                requiresAnalysisSettings(SynonymGraphTokenFilterFactory::new));
+                requiresAnalysisSettings(
+                        (indexSettings, env, name, settings) ->
+                                new SynonymGraphTokenFilterFactory(
+                                        indexSettings, env, name, settings, this)));
         return filters;
     }
 
     @Override
-    public void reload(Settings settings) throws Exception {
-        // nothing special required it seems
+    public void onIndexModule(IndexModule indexModule) {
+        // let go of the synonym maps held by the service of an index when it leaves the node, and
+        // of their snapshots unless it may come back with the same settings, the factories have
+        // been given the same settings
+        indexModule.addIndexEventListener(
+                new IndexEventListener() {
+                    @Override
+                    public void afterIndexRemoved(
+                            Index index, IndexSettings indexSettings, IndexRemovalReason reason) {
+                        synonymMapCache.release(
+                                indexSettings,
+                                reason == IndexRemovalReason.DELETED
+                                        || reason == IndexRemovalReason.NO_LONGER_ASSIGNED);
+                    }
+                });
+    }
+
+    SynonymMapCache synonymMapCache() {
+        return synonymMapCache;
+    }
+
+    SynonymsLoader localLoader() {
+        return localLoader;
+    }
+
+    /**
+     * Reads the synonym indices of a remote cluster through the pooled clients, provided the host
+     * is allowed
+     */
+    SynonymsLoader remoteLoader(String host, int port, String username, String password) {
+        if (!Regex.simpleMatch(allowedHosts, host)
+                && !Regex.simpleMatch(allowedHosts, host + ":" + port)) {
+            throw new IllegalArgumentException(
+                    "loading synonyms from ["
+                            + host
+                            + ":"
+                            + port
+                            + "] is not allowed, see ["
+                            + ALLOWED_HOSTS_SETTING.getKey()
+                            + "]");
+        }
+        return new RestSynonymsLoader(remoteClients, host, port, username, password);
+    }
+
+    /** Fails if the synonyms cannot be loaded from a local index of that name * */
+    void checkIndexAllowed(String index) {
+        NodeClientSynonymsLoader.checkAllowed(allowedIndices, index);
+    }
+
+    ExecutorService buildExecutor() {
+        return buildExecutor;
+    }
+
+    int buildParallelism() {
+        return buildParallelism;
+    }
+
+    ExecutorService loadExecutor() {
+        return loadExecutor;
+    }
+
+    boolean asyncLoad() {
+        return asyncLoad;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reloadTask != null) {
+            reloadTask.cancel();
+        }
+        synonymMapCache.clear();
+        synonymMapCache.snapshots().close();
+        if (remoteClients != null) {
+            remoteClients.close();
+        }
     }
 }
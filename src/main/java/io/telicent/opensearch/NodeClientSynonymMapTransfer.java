@@ -0,0 +1,165 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Function;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.opensearch.client.Client;
+import org.opensearch.cluster.ClusterChangedEvent;
+import org.opensearch.cluster.ClusterState;
+import org.opensearch.cluster.ClusterStateListener;
+import org.opensearch.cluster.node.DiscoveryNode;
+import org.opensearch.cluster.routing.IndexRoutingTable;
+import org.opensearch.cluster.routing.IndexShardRoutingTable;
+import org.opensearch.cluster.routing.ShardRouting;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.common.util.concurrent.ThreadContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shares the synonym maps between the data nodes of the cluster. Only the nodes holding shards of
+ * an index using a map hold that map, so the map is built by one of them, picked from the key of
+ * the map so that the work is spread over the nodes, and the other ones ask that node for it over
+ * the transport layer. A node holding several indices using the map asks the builder of the first
+ * one by name. A node which cannot get the map, because the building node does not hold it yet,
+ * failed or took too long, builds it itself.
+ *
+ * <p>A map pinned to a version is frozen and may not be buildable anymore, so any node holding it
+ * sends it, and a node picked to build it asks another node holding the index instead.
+ */
+public class NodeClientSynonymMapTransfer implements SynonymMapTransfer, ClusterStateListener {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(NodeClientSynonymMapTransfer.class);
+
+    private final Client client;
+    private final TimeValue timeout;
+    // the indices of this node holding the map of a key
+    private final Function<SynonymMapCache.Key, List<String>> holders;
+
+    private volatile ClusterState state;
+
+    public NodeClientSynonymMapTransfer(
+            Client client, TimeValue timeout, Function<SynonymMapCache.Key, List<String>> holders) {
+        this.client = client;
+        this.timeout = timeout;
+        this.holders = holders;
+    }
+
+    @Override
+    public void clusterChanged(ClusterChangedEvent event) {
+        state = event.state();
+    }
+
+    /**
+     * The node building the map of the key for the nodes holding the given index, null until the
+     * shards of that index are known. If remote is set, another node is picked rather than this
+     * one, if there is any.
+     */
+    DiscoveryNode builder(SynonymMapCache.Key key, String holder, boolean remote) {
+        final ClusterState current = state;
+        if (current == null) {
+            return null;
+        }
+        final IndexRoutingTable routing = current.routingTable().index(holder);
+        if (routing == null) {
+            return null;
+        }
+        // sorted by id so that all nodes pick the same one for a key
+        final TreeSet<String> nodeIds = new TreeSet<>();
+        for (IndexShardRoutingTable shard : routing) {
+            for (ShardRouting copy : shard) {
+                if (copy.assignedToNode()) {
+                    nodeIds.add(copy.currentNodeId());
+                }
+            }
+        }
+        if (nodeIds.isEmpty()) {
+            return null;
+        }
+        // hashes the file name rather than the key so that the choice does not depend on the JVM
+        final int hash = SynonymMapSnapshots.fileName(key).hashCode();
+        final List<String> sorted = new ArrayList<>(nodeIds);
+        int picked = Math.floorMod(hash, sorted.size());
+        if (remote && sorted.get(picked).equals(current.nodes().getLocalNodeId())) {
+            picked = (picked + 1) % sorted.size();
+        }
+        return current.nodes().get(sorted.get(picked));
+    }
+
+    private boolean isLocal(DiscoveryNode node) {
+        return node.getId().equals(state.nodes().getLocalNodeId());
+    }
+
+    @Override
+    public boolean builds(SynonymMapCache.Key key, String holder) {
+        if (key.pinnedVersion() != null) {
+            return true;
+        }
+        final DiscoveryNode builder = builder(key, holder, false);
+        return builder == null || isLocal(builder);
+    }
+
+    @Override
+    public SynonymMap fetch(SynonymMapCache.Key key, String version) {
+        final List<String> held = holders.apply(key);
+        if (held.isEmpty()) {
+            return null;
+        }
+        final String holder = held.get(0);
+        final DiscoveryNode builder = builder(key, holder, key.pinnedVersion() != null);
+        if (builder == null || isLocal(builder)) {
+            return null;
+        }
+        final ThreadContext.StoredContext context =
+                client.threadPool().getThreadContext().stashContext();
+        try {
+            final SynonymsTransferResponse response =
+                    client.execute(
+                                    SynonymsTransferAction.INSTANCE,
+                                    new SynonymsTransferRequest(
+                                            builder.getId(), key, holder, version))
+                            .actionGet(timeout);
+            if (response.hasFailures()) {
+                throw response.failures().get(0);
+            }
+            final byte[] bytes =
+                    response.getNodes().isEmpty() ? null : response.getNodes().get(0).map();
+            if (bytes == null) {
+                logger.info(
+                        "Synonym map for index {} at version {} not available from node {}, building it locally",
+                        key.index(),
+                        version,
+                        builder.getName());
+                return null;
+            }
+            final SynonymMap map = SynonymMapSnapshots.deserialize(bytes, version);
+            if (map != null) {
+                logger.info(
+                        "Synonym map for index {} at version {} received from node {}",
+                        key.index(),
+                        version,
+                        builder.getName());
+            }
+            return map;
+        } catch (Exception e) {
+            logger.warn(
+                    "Could not get synonym map for index {} from node {}, building it locally",
+                    key.index(),
+                    builder.getName(),
+                    e);
+            return null;
+        } finally {
+            context.restore();
+        }
+    }
+}
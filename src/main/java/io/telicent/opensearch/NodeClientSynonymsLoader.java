@@ -0,0 +1,296 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.opensearch.action.admin.indices.exists.indices.IndicesExistsRequest;
+import org.opensearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.opensearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.opensearch.action.search.ClearScrollRequest;
+import org.opensearch.action.search.SearchRequest;
+import org.opensearch.action.search.SearchResponse;
+import org.opensearch.action.search.SearchScrollRequest;
+import org.opensearch.client.Client;
+import org.opensearch.cluster.metadata.IndexMetadata;
+import org.opensearch.common.regex.Regex;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.common.util.concurrent.ThreadContext;
+import org.opensearch.common.xcontent.XContentHelper;
+import org.opensearch.core.common.bytes.BytesReference;
+import org.opensearch.core.xcontent.DeprecationHandler;
+import org.opensearch.core.xcontent.MediaType;
+import org.opensearch.core.xcontent.MediaTypeRegistry;
+import org.opensearch.core.xcontent.NamedXContentRegistry;
+import org.opensearch.core.xcontent.XContentParser;
+import org.opensearch.index.query.QueryBuilder;
+import org.opensearch.index.query.QueryBuilders;
+import org.opensearch.search.SearchHit;
+import org.opensearch.search.builder.SearchSourceBuilder;
+import org.opensearch.search.sort.SortBuilders;
+import org.opensearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads the synonyms from an index of the cluster the node belongs to, using the internal client of
+ * the node. The requests go over the transport layer and run with the privileges of the node rather
+ * than those of a user, which is why only the indices matching the allowed patterns can be read.
+ */
+public class NodeClientSynonymsLoader implements SynonymsLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeClientSynonymsLoader.class);
+
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+
+    private final Client client;
+    private final TimeValue timeout;
+    private final List<String> allowedIndices;
+
+    public NodeClientSynonymsLoader(Client client, TimeValue timeout, List<String> allowedIndices) {
+        this.client = client;
+        this.timeout = timeout;
+        this.allowedIndices = allowedIndices;
+    }
+
+    /** Fails unless the name matches one of the allowed patterns * */
+    static void checkAllowed(List<String> allowedIndices, String index) {
+        if (!Regex.simpleMatch(allowedIndices, index)) {
+            throw new IllegalArgumentException(
+                    "loading synonyms from index ["
+                            + index
+                            + "] is not allowed, see ["
+                            + IndexedSynonymsPlugin.ALLOWED_INDICES_SETTING.getKey()
+                            + "]");
+        }
+    }
+
+    /**
+     * Resolves the name of the synonym index, which may be an alias or a pattern, to the settings
+     * of its concrete indices, checking that they can all be read
+     */
+    private Map<String, Settings> concreteIndices(String index) {
+        checkAllowed(allowedIndices, index);
+        final GetSettingsResponse settings =
+                client.admin()
+                        .indices()
+                        .getSettings(new GetSettingsRequest().indices(index))
+                        .actionGet(timeout);
+        for (String concrete : settings.getIndexToSettings().keySet()) {
+            checkAllowed(allowedIndices, concrete);
+        }
+        return settings.getIndexToSettings();
+    }
+
+    @Override
+    public String version(String index, String query) throws Exception {
+        // checked first so that the existence of other indices is not disclosed either
+        checkAllowed(allowedIndices, index);
+        final ThreadContext.StoredContext context = stashContext();
+        try {
+            if (!exists(index)) {
+                return null;
+            }
+            final List<SynonymsVersion.Shard> shards = new ArrayList<>();
+            for (Map.Entry<String, Settings> concrete : concreteIndices(index).entrySet()) {
+                final String uuid = concrete.getValue().get(IndexMetadata.SETTING_INDEX_UUID);
+                final int count =
+                        concrete.getValue().getAsInt(IndexMetadata.SETTING_NUMBER_OF_SHARDS, 1);
+                for (int shard = 0; shard < count; shard++) {
+                    shards.add(shardVersion(concrete.getKey(), uuid, shard, query));
+                }
+            }
+            return SynonymsVersion.format(shards);
+        } finally {
+            context.restore();
+        }
+    }
+
+    /**
+     * Sequence numbers are only ordered within a shard, where the highest one moves with every
+     * write and the count with every deletion. Both are read from the primary, so that successive
+     * versions do not go back and forth between copies refreshed at different times.
+     */
+    private SynonymsVersion.Shard shardVersion(String index, String uuid, int shard, String query) {
+        final SearchRequest request =
+                new SearchRequest(index)
+                        .preference("_shards:" + shard + "|_primary")
+                        .source(
+                                new SearchSourceBuilder()
+                                        .query(query(query))
+                                        .size(1)
+                                        .fetchSource(false)
+                                        .trackTotalHits(true)
+                                        .seqNoAndPrimaryTerm(true)
+                                        .sort(
+                                                SortBuilders.fieldSort("_seq_no")
+                                                        .order(SortOrder.DESC)));
+        final SearchResponse response = client.search(request).actionGet(timeout);
+        final long total = response.getHits().getTotalHits().value;
+        final SearchHit[] hits = response.getHits().getHits();
+        return new SynonymsVersion.Shard(
+                uuid,
+                shard,
+                total,
+                hits.length == 0 ? -1 : hits[0].getSeqNo(),
+                hits.length == 0 ? 0 : hits[0].getPrimaryTerm());
+    }
+
+    @Override
+    public boolean load(
+            String index, String query, String[] fields, int pageSize, PageConsumer consumer)
+            throws Exception {
+        // stream all the documents from the index one page at a time
+        // so that only a single page of hits is held in memory
+        String scrollId = null;
+        // checked first so that the existence of other indices is not disclosed either
+        checkAllowed(allowedIndices, index);
+        final ThreadContext.StoredContext context = stashContext();
+        try {
+            if (!exists(index)) {
+                return false;
+            }
+            concreteIndices(index);
+            try {
+                final SearchSourceBuilder source =
+                        new SearchSourceBuilder()
+                                .query(query(query))
+                                .size(pageSize)
+                                .sort(SortBuilders.fieldSort("_doc"));
+                final boolean selected = fields.length > 0;
+                if (selected) {
+                    source.fetchSource(fields, null);
+                }
+                final SearchRequest request =
+                        new SearchRequest(index).scroll(SCROLL_KEEP_ALIVE).source(source);
+                SearchResponse response = client.search(request).actionGet(timeout);
+
+                while (true) {
+                    scrollId = response.getScrollId();
+                    final SearchHit[] hits = response.getHits().getHits();
+                    if (hits.length == 0) {
+                        break;
+                    }
+                    consumer.accept(rules(hits, selected));
+                    if (hits.length < pageSize || scrollId == null) {
+                        break;
+                    }
+                    response =
+                            client.searchScroll(
+                                            new SearchScrollRequest(scrollId)
+                                                    .scroll(SCROLL_KEEP_ALIVE))
+                                    .actionGet(timeout);
+                }
+                return true;
+            } finally { // release the scroll context
+                if (scrollId != null) {
+                    final ClearScrollRequest clear = new ClearScrollRequest();
+                    clear.addScrollId(scrollId);
+                    try {
+                        client.clearScroll(clear).actionGet(timeout);
+                    } catch (Exception e) {
+                        logger.warn("Could not clear scroll context for index {}", index, e);
+                    }
+                }
+            }
+        } finally {
+            context.restore();
+        }
+    }
+
+    /** Wraps the query selecting the rule documents, if any * */
+    private static QueryBuilder query(String query) {
+        return query == null ? QueryBuilders.matchAllQuery() : QueryBuilders.wrapperQuery(query);
+    }
+
+    private boolean exists(String index) {
+        return client.admin()
+                .indices()
+                .exists(new IndicesExistsRequest(index))
+                .actionGet(timeout)
+                .isExists();
+    }
+
+    /** Runs the requests as the node rather than as the user who triggered the load * */
+    private ThreadContext.StoredContext stashContext() {
+        return client.threadPool().getThreadContext().stashContext();
+    }
+
+    /**
+     * Extracts the rules from the source of the hits, without building a map of each document. The
+     * rules are the values of the top level fields or, when fields were selected, all the values
+     * left in the filtered source.
+     */
+    private static List<String> rules(SearchHit[] hits, boolean nested) throws IOException {
+        final List<String> rules = new ArrayList<>();
+        for (SearchHit hit : hits) {
+            final BytesReference source = hit.getSourceRef();
+            if (source != null) {
+                addRules(source, nested, rules);
+            }
+        }
+        return rules;
+    }
+
+    /** Streams through the source of a document, adding the rules it contains * */
+    static void addRules(BytesReference source, boolean nested, List<String> rules)
+            throws IOException {
+        try (XContentParser parser =
+                XContentHelper.createParser(
+                        NamedXContentRegistry.EMPTY,
+                        DeprecationHandler.IGNORE_DEPRECATIONS,
+                        source,
+                        mediaType(source))) {
+            if (parser.nextToken() == XContentParser.Token.START_OBJECT) {
+                addObject(parser, nested, rules);
+            }
+        }
+    }
+
+    /**
+     * The format the document was indexed in, which its source is stored in. This version offers no
+     * other way to tell it than the deprecated detection.
+     */
+    @SuppressWarnings("deprecation")
+    private static MediaType mediaType(BytesReference source) {
+        return MediaTypeRegistry.xContentType(source);
+    }
+
+    private static void addObject(XContentParser parser, boolean nested, List<String> rules)
+            throws IOException {
+        while (parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+            final XContentParser.Token token = parser.nextToken();
+            if (token == XContentParser.Token.START_ARRAY) {
+                XContentParser.Token element;
+                while ((element = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                    addValue(parser, element, nested, rules);
+                }
+            } else {
+                addValue(parser, token, nested, rules);
+            }
+        }
+    }
+
+    private static void addValue(
+            XContentParser parser, XContentParser.Token token, boolean nested, List<String> rules)
+            throws IOException {
+        if (token == XContentParser.Token.VALUE_STRING
+                || token == XContentParser.Token.VALUE_NUMBER
+                || token == XContentParser.Token.VALUE_BOOLEAN) {
+            rules.add(parser.text());
+        } else if (nested && token == XContentParser.Token.START_OBJECT) {
+            addObject(parser, true, rules);
+        } else {
+            // only scalar values can be rules
+            parser.skipChildren();
+        }
+    }
+}
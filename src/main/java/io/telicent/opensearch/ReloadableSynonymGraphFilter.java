@@ -0,0 +1,259 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.synonym.SynonymGraphFilter;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.AttributeImpl;
+
+/**
+ * Applies the current version of a {@link ReloadableSynonymMap}. Analyzers reuse their token
+ * streams, so the map is checked whenever the stream is reset and the underlying {@link
+ * SynonymGraphFilter} replaced if a newer map has been swapped in. A stream being consumed keeps
+ * the map it started with.
+ *
+ * <p>When the map caches its expansions or has rules overlaid, the input is read first and the
+ * graph produced for the same tokens replayed if it is in the {@link SynonymExpansionCache}.
+ * Otherwise the buffered tokens go through the synonym filter, with a map combining the base map
+ * and the {@link SynonymOverlay} if the overlaid rules may apply, and the resulting graph is
+ * cached. An input longer than {@link SynonymExpansionCache#MAX_TOKENS} is not cached, so it is
+ * streamed through the synonym filter once that many tokens have been read, unless there is an
+ * overlay which has to see all the terms to pick its rules. Nothing is buffered for a map used at
+ * index time, which is pinned and therefore never overlaid.
+ */
+public final class ReloadableSynonymGraphFilter extends TokenFilter {
+
+    private final ReloadableSynonymMap synonyms;
+    // the expansions are not cached for documents being indexed
+    private final boolean indexTime;
+
+    private SynonymMap current;
+    private SynonymOverlay overlay;
+    // either the input itself or a synonym filter wrapping it
+    private TokenStream delegate;
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final PositionIncrementAttribute posIncAtt =
+            addAttribute(PositionIncrementAttribute.class);
+    private final PositionLengthAttribute posLenAtt = addAttribute(PositionLengthAttribute.class);
+    private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+    private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+
+    // whether the whole input is read before being expanded
+    private boolean buffering;
+    // set while the expansions of the current map are cached
+    private SynonymExpansionCache expansions;
+    // replays the buffered input to the synonym filter on a cache miss
+    private final BufferedInput buffered = new BufferedInput();
+    private TokenStream expander;
+    private final StringBuilder key = new StringBuilder();
+    // the terms of the input, only collected when there is an overlay
+    private final List<String> terms = new ArrayList<>();
+    // the graph being replayed, null until the input has been read
+    private Iterator<State> graph;
+    // the synonym filter reading the rest of an input too long to be cached, if any
+    private TokenStream streamed;
+
+    public ReloadableSynonymGraphFilter(TokenStream input, ReloadableSynonymMap synonyms) {
+        this(input, synonyms, false);
+    }
+
+    /** Creates a filter which never buffers its input if indexTime is set * */
+    public ReloadableSynonymGraphFilter(
+            TokenStream input, ReloadableSynonymMap synonyms, boolean indexTime) {
+        super(input);
+        this.synonyms = synonyms;
+        this.indexTime = indexTime;
+        this.delegate = input;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (!buffering) {
+            return delegate.incrementToken();
+        }
+        if (graph == null && streamed == null) {
+            expand();
+        }
+        if (streamed != null) {
+            return streamed.incrementToken();
+        }
+        if (!graph.hasNext()) {
+            return false;
+        }
+        restoreState(graph.next());
+        return true;
+    }
+
+    /**
+     * Reads the input and sets the graph the map produces for it, or the filter streaming it once
+     * it is too long to be cached
+     */
+    private void expand() throws IOException {
+        final List<State> tokens = buffered.tokens;
+        tokens.clear();
+        key.setLength(0);
+        terms.clear();
+        buffered.streaming = false;
+        boolean cacheable = expansions != null;
+        while (input.incrementToken()) {
+            tokens.add(captureState());
+            if (overlay != null) {
+                terms.add(termAtt.toString());
+            }
+            if (tokens.size() > SynonymExpansionCache.MAX_TOKENS) {
+                if (overlay == null) {
+                    // the buffered tokens are played back, then the rest of the input
+                    buffered.streaming = true;
+                    streamed = expander;
+                    streamed.reset();
+                    return;
+                }
+                cacheable = false;
+            } else if (cacheable) {
+                key.append(termAtt)
+                        .append('\u0000')
+                        .append(posIncAtt.getPositionIncrement())
+                        .append(',')
+                        .append(posLenAtt.getPositionLength())
+                        .append(',')
+                        .append(offsetAtt.startOffset())
+                        .append(',')
+                        .append(offsetAtt.endOffset())
+                        .append(',')
+                        .append(typeAtt.type())
+                        .append('\u0000');
+            }
+        }
+        graph = expand(tokens, cacheable).iterator();
+    }
+
+    /** Returns the graph the map produces for the whole input * */
+    private List<State> expand(List<State> tokens, boolean cacheable) throws IOException {
+        if (tokens.isEmpty()) {
+            return tokens;
+        }
+
+        final SynonymExpansionCache.Key cacheKey =
+                cacheable ? new SynonymExpansionCache.Key(layout(), key.toString()) : null;
+        if (cacheKey != null) {
+            final List<State> cached = expansions.get(current, overlay, cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        final TokenStream filter =
+                overlay != null && overlay.touches(terms)
+                        ? new SynonymGraphFilter(buffered, overlay.combine(terms), false)
+                        : expander;
+        final List<State> expanded = new ArrayList<>();
+        if (filter == null) {
+            // nothing but the overlay, which does not apply
+            expanded.addAll(tokens);
+        } else {
+            filter.reset();
+            while (filter.incrementToken()) {
+                expanded.add(captureState());
+            }
+        }
+        if (cacheKey != null) {
+            expansions.put(current, overlay, cacheKey, expanded);
+        }
+        return expanded;
+    }
+
+    /** Attributes of this stream, which a cached graph can only be replayed into * */
+    private List<Class<? extends AttributeImpl>> layout() {
+        final List<Class<? extends AttributeImpl>> layout = new ArrayList<>();
+        final Iterator<AttributeImpl> impls = getAttributeImplsIterator();
+        while (impls.hasNext()) {
+            layout.add(impls.next().getClass());
+        }
+        return layout;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        final SynonymMap latest = synonyms.get();
+        final SynonymOverlay added = synonyms.overlay();
+        if (latest != current || added != overlay) {
+            current = latest;
+            overlay = added;
+            final boolean empty = latest == null || (latest.fst == null && added == null);
+            expansions = empty || indexTime ? null : synonyms.expansions();
+            buffering = !empty && !indexTime && (expansions != null || added != null);
+            // the filters share the attributes of the input and therefore of this stream
+            if (empty) {
+                delegate = input;
+            } else if (!buffering) {
+                delegate = new SynonymGraphFilter(input, latest, false);
+            } else {
+                delegate = input;
+                expander =
+                        latest.fst == null ? null : new SynonymGraphFilter(buffered, latest, false);
+            }
+        }
+        graph = null;
+        streamed = null;
+        // resets the input as well
+        delegate.reset();
+    }
+
+    @Override
+    public void end() throws IOException {
+        delegate.end();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    /** Plays the tokens read from the input back to the synonym filter * */
+    private final class BufferedInput extends TokenStream {
+
+        private final List<State> tokens = new ArrayList<>();
+        private int next;
+        // whether the rest of the input follows the buffered tokens
+        private boolean streaming;
+
+        BufferedInput() {
+            super(ReloadableSynonymGraphFilter.this);
+        }
+
+        @Override
+        public boolean incrementToken() throws IOException {
+            if (next == tokens.size()) {
+                if (streaming && input.incrementToken()) {
+                    return true;
+                }
+                streaming = false;
+                return false;
+            }
+            restoreState(tokens.get(next++));
+            return true;
+        }
+
+        @Override
+        public void reset() {
+            next = 0;
+        }
+    }
+}
@@ -0,0 +1,594 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.opensearch.core.common.breaker.CircuitBreaker;
+import org.opensearch.core.common.breaker.NoopCircuitBreaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the current synonym map built from a synonym index. The map is rebuilt when the content of
+ * the index changes and swapped atomically, readers always get a complete map and never wait for a
+ * rebuild to finish.
+ *
+ * <p>A map whose key pins a version of the synonym index is frozen: it is restored, received from
+ * another node or built from the index only if the index is at that version, and never reloaded.
+ *
+ * <p>When documents are only added to the index, their rules can be applied on top of the current
+ * map as a {@link SynonymOverlay} instead, which is much faster than rebuilding it. The map is
+ * rebuilt with them once there are too many.
+ */
+public class ReloadableSynonymMap {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReloadableSynonymMap.class);
+
+    /** Where the synonyms come from * */
+    public interface Source {
+
+        /** Version of the content of the source, null if it does not exist * */
+        String version() throws Exception;
+
+        /**
+         * Builds a new map from the current content of the source, reporting how it went in info
+         *
+         * @throws IncompleteException if only part of the content could be loaded
+         */
+        SynonymMap build(BuildInfo info) throws Exception;
+
+        /**
+         * Analyses the rules of the documents added to the source between two versions, so that
+         * they can be applied on top of the map built at the first one.
+         *
+         * @return null if the content changed in any other way, the map must then be rebuilt
+         */
+        default List<IndexedSynonymParser.Mapping> additions(String since, String current)
+                throws Exception {
+            return null;
+        }
+    }
+
+    /** Figures about a build which only the source knows * */
+    public static class BuildInfo {
+        private long rules = -1;
+        private long lenientSkipped;
+        private long loadNanos;
+
+        /** Number of rules the map was built from and how many lost terms in lenient mode * */
+        public void rules(long rules, long lenientSkipped) {
+            this.rules = rules;
+            this.lenientSkipped = lenientSkipped;
+        }
+
+        /** Time spent fetching and analysing the rules, the rest being spent on the FST * */
+        public void loadNanos(long loadNanos) {
+            this.loadNanos = loadNanos;
+        }
+    }
+
+    /** How the current map was obtained, a restored map has no rule count * */
+    private record Outcome(
+            long rules,
+            long lenientSkipped,
+            long loadNanos,
+            long buildNanos,
+            boolean restored,
+            long timestamp) {}
+
+    /** A complete map without any rule overlaid, which other nodes can be sent as is * */
+    private record Exportable(SynonymMap map, String version) {}
+
+    /** Thrown when only part of the content of the source could be loaded * */
+    public static class IncompleteException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        // never serialized, only handed over within the node
+        private final transient SynonymMap partial;
+
+        public IncompleteException(SynonymMap partial, Throwable cause) {
+            super("synonyms could only be partially loaded", cause);
+            this.partial = partial;
+        }
+
+        public SynonymMap partial() {
+            return partial;
+        }
+    }
+
+    private final SynonymMapCache.Key key;
+    private final Source source;
+    private final SynonymMapSnapshots snapshots;
+    private final SynonymMapTransfer transfer;
+    // charged with the size of the current map
+    private final CircuitBreaker breaker;
+    // guarded by this
+    private long chargedBytes;
+    private boolean released;
+    // null unless the expansions of hot queries are cached
+    private final SynonymExpansionCache expansions;
+
+    // above this number of mappings from added rules, the map is rebuilt rather than overlaid
+    private final int overlayMaxMappings;
+
+    private volatile SynonymMap map;
+    // rules added since the map was built, if any
+    private volatile SynonymOverlay overlay;
+    private volatile String version;
+    // the current map is incomplete and must be rebuilt even if the version is the same
+    private volatile boolean stale;
+
+    private volatile Outcome outcome;
+    private volatile long reloads;
+    // cleared once a complete map has been obtained
+    private volatile String lastError;
+
+    // released once a first map has been obtained
+    private final CountDownLatch ready = new CountDownLatch(1);
+
+    // the current map if it can be sent to other nodes, null otherwise
+    private volatile Exportable exportable;
+    // the current map as last sent to other nodes, charged to the breaker until the map is swapped
+    // or released, guarded by exports so that sending it never waits for a build
+    private final Object exports = new Object();
+    private SynonymMap exportedMap;
+    private byte[] exported;
+
+    ReloadableSynonymMap(SynonymMapCache.Key key, Source source, SynonymMapSnapshots snapshots) {
+        this(key, source, snapshots, 0, 0);
+    }
+
+    /**
+     * Creates a map caching the expansions of up to the given number of token sequences, and
+     * applying the rules added to the source on top of the current map, as long as they expand to
+     * at most overlayMaxMappings mappings, before rebuilding it.
+     */
+    ReloadableSynonymMap(
+            SynonymMapCache.Key key,
+            Source source,
+            SynonymMapSnapshots snapshots,
+            long expansionCacheSize,
+            int overlayMaxMappings) {
+        this(
+                key,
+                source,
+                snapshots,
+                SynonymMapTransfer.NONE,
+                new NoopCircuitBreaker(IndexedSynonymsPlugin.BREAKER_NAME),
+                expansionCacheSize,
+                overlayMaxMappings);
+    }
+
+    /**
+     * Same as above, but the map is obtained through the transfer when another node builds it and
+     * its size is charged to the breaker until {@link #release()} is called
+     */
+    ReloadableSynonymMap(
+            SynonymMapCache.Key key,
+            Source source,
+            SynonymMapSnapshots snapshots,
+            SynonymMapTransfer transfer,
+            CircuitBreaker breaker,
+            long expansionCacheSize,
+            int overlayMaxMappings) {
+        this.key = key;
+        this.source = source;
+        this.snapshots = snapshots;
+        this.transfer = transfer;
+        this.breaker = breaker;
+        this.expansions =
+                expansionCacheSize > 0 ? new SynonymExpansionCache(expansionCacheSize) : null;
+        this.overlayMaxMappings = overlayMaxMappings;
+    }
+
+    /** Returns the current map, null until it has been loaded * */
+    public SynonymMap get() {
+        return map;
+    }
+
+    /** Returns the rules added on top of the current map, null if there are none * */
+    public SynonymOverlay overlay() {
+        final SynonymOverlay current = overlay;
+        // the map may have been rebuilt in the meantime
+        return current != null && current.base() == map ? current : null;
+    }
+
+    /** Returns the cache of the expansions of the current map, null if there is none * */
+    public SynonymExpansionCache expansions() {
+        return expansions;
+    }
+
+    /** Whether a map has been obtained, queries are passed through unchanged until then * */
+    public boolean isReady() {
+        return map != null;
+    }
+
+    /**
+     * Waits for a map to be obtained.
+     *
+     * @return false if none was obtained within the timeout
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return ready.await(timeout, unit);
+    }
+
+    /** Returns the version of the synonym index the current map was built from * */
+    public String version() {
+        return version;
+    }
+
+    /** Returns the figures about the current map, shared by the given indices * */
+    public SynonymMapStats stats(List<String> indices) {
+        final SynonymMap current = map;
+        final Outcome last = outcome;
+        final SynonymOverlay added = overlay();
+        return new SynonymMapStats(
+                key.index(),
+                key.query(),
+                key.expand(),
+                key.lenient(),
+                indices,
+                isReady(),
+                version,
+                stale,
+                last != null && last.restored(),
+                last == null ? -1 : last.rules(),
+                last == null ? 0 : last.lenientSkipped(),
+                current == null || current.fst == null ? 0 : current.fst.ramBytesUsed(),
+                current == null ? 0 : current.words.size(),
+                current == null ? 0 : current.words.ramBytesUsed(),
+                last == null ? 0 : TimeUnit.NANOSECONDS.toMillis(last.loadNanos()),
+                last == null ? 0 : TimeUnit.NANOSECONDS.toMillis(last.buildNanos()),
+                last == null ? -1 : last.timestamp(),
+                reloads,
+                lastError,
+                added == null ? 0 : added.size(),
+                expansions == null ? -1 : expansions.entries(),
+                expansions == null ? 0 : expansions.hits(),
+                expansions == null ? 0 : expansions.misses());
+    }
+
+    void load() throws Exception {
+        try {
+            final long start = System.nanoTime();
+            final String current =
+                    key.pinnedVersion() != null ? key.pinnedVersion() : source.version();
+            // the node sending the map is not waited for while holding the lock
+            final SynonymMap obtained = obtain(current);
+            synchronized (this) {
+                swap(restoreOrBuild(current, obtained, start), current);
+                ready.countDown();
+            }
+        } catch (Exception e) {
+            lastError = e.toString();
+            throw e;
+        }
+    }
+
+    /**
+     * Rebuilds the map if the content of the source has changed since it was last built.
+     *
+     * @return true if a new map has been swapped in
+     */
+    boolean reloadIfChanged() throws Exception {
+        final long start;
+        final String current;
+        synchronized (this) {
+            if (key.pinnedVersion() != null && map != null) {
+                return false;
+            }
+            try {
+                start = System.nanoTime();
+                current = source.version();
+                if (isCurrent(current)) {
+                    return false;
+                }
+                if (overlay(current)) {
+                    return true;
+                }
+            } catch (Exception e) {
+                lastError = e.toString();
+                throw e;
+            }
+        }
+        final SynonymMap obtained;
+        try {
+            obtained = obtain(current);
+        } catch (Exception e) {
+            lastError = e.toString();
+            throw e;
+        }
+        synchronized (this) {
+            if (isCurrent(current)) {
+                // swapped in by another caller in the meantime
+                return false;
+            }
+            final SynonymMap rebuilt;
+            try {
+                rebuilt = restoreOrBuild(current, obtained, start);
+            } catch (Exception e) {
+                lastError = e.toString();
+                throw e;
+            }
+            swap(rebuilt, current);
+            ready.countDown();
+            reloads++;
+        }
+        logger.info("Synonym map for index {} reloaded at version {}", key.index(), current);
+        return true;
+    }
+
+    private boolean isCurrent(String current) {
+        return map != null && !stale && Objects.equals(current, version);
+    }
+
+    /**
+     * Applies the rules added to the source on top of the current map if that is all that changed
+     *
+     * @return false if the map must be rebuilt instead
+     */
+    private boolean overlay(String current) throws Exception {
+        final SynonymOverlay extended = extend(current);
+        if (extended == null) {
+            return false;
+        }
+        overlay = extended;
+        exportable = null;
+        if (expansions != null) {
+            expansions.invalidate(map, extended);
+        }
+        version = current;
+        lastError = null;
+        reloads++;
+        // the snapshot of the base map is behind the source now
+        snapshots.delete(key);
+        logger.info(
+                "Synonym map for index {} overlaid with {} mappings at version {}",
+                key.index(),
+                extended.size(),
+                current);
+        return true;
+    }
+
+    /**
+     * Adds the rules added to the source to the overlay of the current map, unless they expand to
+     * too many mappings or the source changed in any other way.
+     */
+    private SynonymOverlay extend(String current) throws Exception {
+        if (overlayMaxMappings <= 0 || map == null || stale) {
+            return null;
+        }
+        final List<IndexedSynonymParser.Mapping> added = source.additions(version, current);
+        if (added == null || added.size() > overlayMaxMappings) {
+            return null;
+        }
+        final SynonymOverlay previous = overlay;
+        return previous == null
+                ? new SynonymOverlay(map, key.dedup(), added)
+                : previous.plus(added);
+    }
+
+    /** Whether the overlay holds enough mappings for the map to be rebuilt with them * */
+    boolean needsCompaction() {
+        final SynonymOverlay current = overlay;
+        return current != null && current.size() > overlayMaxMappings;
+    }
+
+    /**
+     * Rebuilds the map with the rules of its overlay, as well as any change made to the source
+     * since.
+     *
+     * @return false if the overlay was folded into the map in the meantime
+     */
+    boolean compact() throws Exception {
+        final long start;
+        final String current;
+        final SynonymMap obtained;
+        try {
+            synchronized (this) {
+                if (!needsCompaction()) {
+                    return false;
+                }
+                start = System.nanoTime();
+                current = source.version();
+            }
+            obtained = obtain(current);
+        } catch (Exception e) {
+            lastError = e.toString();
+            throw e;
+        }
+        synchronized (this) {
+            if (!needsCompaction()) {
+                return false;
+            }
+            final SynonymMap rebuilt;
+            try {
+                rebuilt = restoreOrBuild(current, obtained, start);
+            } catch (Exception e) {
+                lastError = e.toString();
+                throw e;
+            }
+            swap(rebuilt, current);
+            reloads++;
+        }
+        logger.info("Synonym map for index {} compacted at version {}", key.index(), current);
+        return true;
+    }
+
+    /**
+     * Serializes the map built from the given version of the source for another node. The map is
+     * only sent once complete and without any rule overlaid, so that it is the same as the one the
+     * other node would build. This never waits for the map to be built or reloaded, the other node
+     * building the map itself when it is not ready.
+     *
+     * @return null if the map is at another version or cannot be sent as is
+     */
+    byte[] export(String requested) throws Exception {
+        final Exportable current = exportable;
+        if (current == null || !current.version().equals(requested)) {
+            return null;
+        }
+        synchronized (exports) {
+            if (exportedMap != current.map()) {
+                final byte[] bytes = SynonymMapSnapshots.serialize(requested, current.map());
+                if (exportable != current) {
+                    // swapped or released while serializing, not to be kept
+                    return bytes;
+                }
+                dropExported();
+                breaker.addEstimateBytesAndMaybeBreak(bytes.length, "synonyms export");
+                exported = bytes;
+                exportedMap = current.map();
+            }
+            return exported;
+        }
+    }
+
+    private void dropExported() {
+        synchronized (exports) {
+            if (exported != null) {
+                breaker.addWithoutBreaking(-exported.length);
+                exported = null;
+                exportedMap = null;
+            }
+        }
+    }
+
+    /** Stops charging the size of the map to the breaker, once it is not held anymore * */
+    synchronized void release() {
+        released = true;
+        exportable = null;
+        breaker.addWithoutBreaking(-chargedBytes);
+        chargedBytes = 0;
+        dropExported();
+    }
+
+    private void swap(SynonymMap rebuilt, String current) {
+        if (!released) {
+            // already checked while it was built, the map is there now anyway
+            final long bytes = sizeOf(rebuilt);
+            breaker.addWithoutBreaking(bytes - chargedBytes);
+            chargedBytes = bytes;
+        }
+        // no copy of the previous map is sent from now on
+        exportable = null;
+        map = rebuilt;
+        overlay = null;
+        version = current;
+        dropExported();
+        // graphs cached in between are dropped as they do not come from the new map
+        if (expansions != null) {
+            expansions.invalidate(rebuilt, null);
+        }
+        if (!released && !stale) {
+            exportable = new Exportable(rebuilt, current);
+        }
+    }
+
+    /**
+     * Gets the map of that version from its snapshot or, failing that, from the node building it,
+     * in which case it is stored. Called without holding the lock, as the other node may take a
+     * while to answer.
+     *
+     * @return null if the map must be built locally
+     */
+    private SynonymMap obtain(String current) {
+        final SynonymMap restored = snapshots.read(key, current);
+        if (restored != null || current == null) {
+            return restored;
+        }
+        final SynonymMap fetched = transfer.fetch(key, current);
+        if (fetched != null) {
+            snapshots.write(key, current, fetched);
+        }
+        return fetched;
+    }
+
+    /**
+     * Uses the map obtained from a snapshot or from another node if there is one, otherwise builds
+     * it and stores it.
+     */
+    private SynonymMap restoreOrBuild(String current, SynonymMap restored, long start)
+            throws Exception {
+        if (restored != null) {
+            stale = false;
+            lastError = null;
+            outcome = new Outcome(-1, 0, System.nanoTime() - start, 0, true, now());
+            return restored;
+        }
+        if (key.pinnedVersion() != null) {
+            checkPinnedVersion();
+        }
+        final BuildInfo info = new BuildInfo();
+        try {
+            final SynonymMap built = source.build(info);
+            if (key.pinnedVersion() != null) {
+                // the index may have changed while being read
+                checkPinnedVersion();
+            }
+            snapshots.write(key, current, built);
+            stale = false;
+            lastError = null;
+            outcome = outcome(info, start);
+            return built;
+        } catch (IncompleteException e) {
+            if (key.pinnedVersion() != null) {
+                // a frozen map must hold all the rules of its version
+                throw e;
+            }
+            // serve what could be loaded but neither keep it nor consider it up to date
+            logger.warn("Synonym map for index {} is incomplete", key.index(), e.getCause());
+            snapshots.delete(key);
+            stale = true;
+            lastError = String.valueOf(e.getCause());
+            outcome = outcome(info, start);
+            return e.partial();
+        }
+    }
+
+    /**
+     * A frozen map can only be built while the synonym index is at the version it is pinned to *
+     */
+    private void checkPinnedVersion() throws Exception {
+        final String current = source.version();
+        if (!key.pinnedVersion().equals(current)) {
+            throw new IllegalStateException(
+                    "synonym index ["
+                            + key.index()
+                            + "] is at version ["
+                            + current
+                            + "] and not at the pinned version ["
+                            + key.pinnedVersion()
+                            + "], which is neither in a snapshot nor on another node");
+        }
+    }
+
+    static long sizeOf(SynonymMap map) {
+        return (map.fst == null ? 0 : map.fst.ramBytesUsed()) + map.words.ramBytesUsed();
+    }
+
+    private static Outcome outcome(BuildInfo info, long start) {
+        final long total = System.nanoTime() - start;
+        return new Outcome(
+                info.rules,
+                info.lenientSkipped,
+                info.loadNanos,
+                Math.max(0, total - info.loadNanos),
+                false,
+                now());
+    }
+
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+}
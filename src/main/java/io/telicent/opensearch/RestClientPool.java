@@ -0,0 +1,255 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.net.ssl.SSLContext;
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.TrustAllStrategy;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.opensearch.client.ResponseException;
+import org.opensearch.client.RestClient;
+import org.opensearch.client.RestClientBuilder;
+import org.opensearch.client.opensearch._types.OpenSearchException;
+import org.opensearch.common.CheckedSupplier;
+import org.opensearch.common.unit.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Node-wide pool of the HTTP clients reading synonym indices from remote clusters. There is one
+ * client per cluster and set of credentials, shared by all the filters using it so that their
+ * connections are kept alive and reused. Each client has connect and socket timeouts and a bounded
+ * number of connections, requests beyond that wait for a connection to be free. The pool is closed
+ * with the node.
+ *
+ * <p>The certificates of the clusters are verified, against the certificate authorities of the JVM
+ * or the ones given. Trusting any certificate is only meant for local testing, against a cluster
+ * with self-signed certificates.
+ */
+public class RestClientPool implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(RestClientPool.class);
+
+    private record Target(String host, int port, String username, String password) {}
+
+    private final TimeValue connectTimeout;
+    private final TimeValue socketTimeout;
+    private final int maxConnections;
+    private final int maxRetries;
+    private final TimeValue retryBackoff;
+    // null for the default trust material of the JVM
+    private final SSLContext sslContext;
+    private final boolean trustAll;
+
+    // guarded by this
+    private final Map<Target, RestClient> clients = new HashMap<>();
+    private boolean closed;
+
+    public RestClientPool(
+            TimeValue connectTimeout,
+            TimeValue socketTimeout,
+            int maxConnections,
+            int maxRetries,
+            TimeValue retryBackoff) {
+        this(connectTimeout, socketTimeout, maxConnections, maxRetries, retryBackoff, null, false);
+    }
+
+    /**
+     * @param certificateAuthorities PEM file of the certificate authorities trusted instead of the
+     *     ones of the JVM, may be null
+     * @param trustAll whether any certificate and host name is accepted, for local testing only
+     */
+    public RestClientPool(
+            TimeValue connectTimeout,
+            TimeValue socketTimeout,
+            int maxConnections,
+            int maxRetries,
+            TimeValue retryBackoff,
+            Path certificateAuthorities,
+            boolean trustAll) {
+        this.connectTimeout = connectTimeout;
+        this.socketTimeout = socketTimeout;
+        this.maxConnections = maxConnections;
+        this.maxRetries = maxRetries;
+        this.retryBackoff = retryBackoff;
+        this.trustAll = trustAll;
+        try {
+            if (trustAll) {
+                logger.warn(
+                        "Certificates of remote synonym clusters are not verified, this is only"
+                                + " meant for local testing");
+                this.sslContext =
+                        SSLContextBuilder.create()
+                                .loadTrustMaterial(null, new TrustAllStrategy())
+                                .build();
+            } else if (certificateAuthorities != null) {
+                this.sslContext =
+                        SSLContextBuilder.create()
+                                .loadTrustMaterial(trustStore(certificateAuthorities), null)
+                                .build();
+            } else {
+                this.sslContext = null;
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalArgumentException(
+                    "Cannot read the certificate authorities " + certificateAuthorities, e);
+        }
+    }
+
+    /** Reads the certificates of a PEM file into a trust store * */
+    private static KeyStore trustStore(Path certificateAuthorities)
+            throws IOException, GeneralSecurityException {
+        final Collection<? extends Certificate> certificates;
+        try (InputStream in = Files.newInputStream(certificateAuthorities)) {
+            certificates = CertificateFactory.getInstance("X.509").generateCertificates(in);
+        }
+        if (certificates.isEmpty()) {
+            throw new IllegalArgumentException("No certificate found in " + certificateAuthorities);
+        }
+        final KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        trustStore.load(null, null);
+        int i = 0;
+        for (Certificate certificate : certificates) {
+            trustStore.setCertificateEntry("ca-" + i++, certificate);
+        }
+        return trustStore;
+    }
+
+    /**
+     * Returns the client of a cluster, creating it on first use. The client connects over HTTPS,
+     * verifying the certificate of the cluster, when credentials are given.
+     */
+    public synchronized RestClient client(String host, int port, String username, String password)
+            throws Exception {
+        if (closed) {
+            throw new IllegalStateException("the pool of synonym clients is closed");
+        }
+        final Target target =
+                username != null && password != null
+                        ? new Target(host, port, username, password)
+                        : new Target(host, port, null, null);
+        RestClient client = clients.get(target);
+        if (client == null) {
+            client = create(target);
+            clients.put(target, client);
+            logger.info("Created client for synonyms on {}:{}", host, port);
+        }
+        return client;
+    }
+
+    private RestClient create(Target target) {
+        final boolean secure = target.username() != null;
+        final CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+        if (secure) {
+            credentialsProvider.setCredentials(
+                    AuthScope.ANY,
+                    new UsernamePasswordCredentials(target.username(), target.password()));
+        }
+
+        final RestClientBuilder builder =
+                RestClient.builder(
+                        new HttpHost(target.host(), target.port(), secure ? "https" : "http"));
+        builder.setRequestConfigCallback(
+                config ->
+                        config.setConnectTimeout((int) connectTimeout.millis())
+                                .setSocketTimeout((int) socketTimeout.millis()));
+        builder.setHttpClientConfigCallback(
+                httpClient -> {
+                    httpClient.setMaxConnTotal(maxConnections).setMaxConnPerRoute(maxConnections);
+                    if (secure) {
+                        httpClient.setDefaultCredentialsProvider(credentialsProvider);
+                        if (sslContext != null) {
+                            httpClient.setSSLContext(sslContext);
+                        }
+                        if (trustAll) {
+                            httpClient.setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE);
+                        }
+                    }
+                    return httpClient;
+                });
+        return builder.build();
+    }
+
+    /**
+     * Runs a request, trying it again with an exponential backoff while it fails because the remote
+     * cluster cannot serve it yet, for instance while its shards are not all available.
+     */
+    public <T> T withRetries(CheckedSupplier<T, Exception> request) throws Exception {
+        long backoff = retryBackoff.millis();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return request.get();
+            } catch (Exception e) {
+                if (attempt >= maxRetries || !retryable(e)) {
+                    throw e;
+                }
+                logger.debug("Synonym request failed, trying again in {} ms", backoff, e);
+                Thread.sleep(backoff);
+                backoff *= 2;
+            }
+        }
+    }
+
+    /** Whether a failure may not happen again, such as a timeout or an unavailable shard * */
+    static boolean retryable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ResponseException response) {
+                return retryable(response.getResponse().getStatusLine().getStatusCode());
+            }
+            if (cause instanceof OpenSearchException error) {
+                return retryable(error.status());
+            }
+            if (cause instanceof ConnectException
+                    || cause instanceof SocketTimeoutException
+                    || cause instanceof ConnectionClosedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean retryable(int status) {
+        // too many requests, bad gateway, unavailable, gateway timeout
+        return status == 429 || status == 502 || status == 503 || status == 504;
+    }
+
+    @Override
+    public void close() throws IOException {
+        final List<RestClient> open;
+        synchronized (this) {
+            closed = true;
+            open = new ArrayList<>(clients.values());
+            clients.clear();
+        }
+        for (RestClient client : open) {
+            client.close();
+        }
+    }
+}
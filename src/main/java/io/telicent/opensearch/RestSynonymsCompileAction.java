@@ -0,0 +1,61 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import org.opensearch.client.node.NodeClient;
+import org.opensearch.common.xcontent.support.XContentMapValues;
+import org.opensearch.rest.BaseRestHandler;
+import org.opensearch.rest.RestRequest;
+import org.opensearch.rest.action.RestToXContentListener;
+
+/**
+ * Compiles the synonyms of a filter under {@code _plugins/synonyms/{index}/_compile} without
+ * installing them. The body names the analyzer, the filter if the analyzer has more than one and,
+ * optionally, the rules to compile instead of the content of the synonym index.
+ */
+public class RestSynonymsCompileAction extends BaseRestHandler {
+
+    @Override
+    public String getName() {
+        return "synonyms_compile_action";
+    }
+
+    @Override
+    public List<Route> routes() {
+        return List.of(
+                new Route(RestRequest.Method.GET, "/_plugins/synonyms/{index}/_compile"),
+                new Route(RestRequest.Method.POST, "/_plugins/synonyms/{index}/_compile"));
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client)
+            throws IOException {
+        String analyzer = request.param("analyzer");
+        String filter = request.param("filter");
+        List<String> rules = null;
+        if (request.hasContentOrSourceParam()) {
+            final Map<String, Object> body = request.contentOrSourceParamParser().map();
+            analyzer = XContentMapValues.nodeStringValue(body.get("analyzer"), analyzer);
+            filter = XContentMapValues.nodeStringValue(body.get("filter"), filter);
+            final Object inline = body.get("rules");
+            if (inline != null) {
+                rules = List.of(XContentMapValues.nodeStringArrayValue(inline));
+            }
+        }
+        final SynonymsCompileRequest compileRequest =
+                new SynonymsCompileRequest(request.param("index"), analyzer, filter, rules);
+        return channel ->
+                client.execute(
+                        SynonymsCompileAction.INSTANCE,
+                        compileRequest,
+                        new RestToXContentListener<>(channel));
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import org.opensearch.client.json.jackson.JacksonJsonpMapper;
+import org.opensearch.client.opensearch.OpenSearchClient;
+import org.opensearch.client.opensearch._types.SortOrder;
+import org.opensearch.client.opensearch._types.Time;
+import org.opensearch.client.opensearch._types.query_dsl.MatchAllQuery;
+import org.opensearch.client.opensearch._types.query_dsl.Query;
+import org.opensearch.client.opensearch._types.query_dsl.WrapperQuery;
+import org.opensearch.client.opensearch.core.search.Hit;
+import org.opensearch.client.opensearch.core.search.SearchResult;
+import org.opensearch.client.opensearch.indices.GetIndicesSettingsResponse;
+import org.opensearch.client.opensearch.indices.IndexSettings;
+import org.opensearch.client.opensearch.indices.IndexState;
+import org.opensearch.client.transport.OpenSearchTransport;
+import org.opensearch.client.transport.rest_client.RestClientTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads the synonyms over HTTP, used for synonym indices living in a remote cluster. The requests
+ * go through the client of that cluster in the {@link RestClientPool}, the ones which start the
+ * loading are tried again while the cluster cannot serve them.
+ */
+public class RestSynonymsLoader implements SynonymsLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(RestSynonymsLoader.class);
+
+    private static final Time SCROLL_KEEP_ALIVE = Time.of(t -> t.time("1m"));
+
+    // thread safe once configured, so shared by all the clients
+    private static final JacksonJsonpMapper NESTED_MAPPER = new JacksonJsonpMapper(newMapper(true));
+    private static final JacksonJsonpMapper FLAT_MAPPER = new JacksonJsonpMapper(newMapper(false));
+
+    private final RestClientPool clients;
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+
+    public RestSynonymsLoader(
+            RestClientPool clients, String host, int port, String username, String password) {
+        this.clients = clients;
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+    }
+
+    @Override
+    public String version(String index, String query) throws Exception {
+        final OpenSearchClient client = createClient(false);
+        if (!exists(client, index)) {
+            return null;
+        }
+        final GetIndicesSettingsResponse settings =
+                clients.withRetries(() -> client.indices().getSettings(g -> g.index(index)));
+        final List<SynonymsVersion.Shard> shards = new ArrayList<>();
+        for (Map.Entry<String, IndexState> concrete : settings.result().entrySet()) {
+            IndexSettings indexSettings = concrete.getValue().settings();
+            if (indexSettings.index() != null) {
+                indexSettings = indexSettings.index();
+            }
+            final String uuid = indexSettings.uuid();
+            final int count =
+                    indexSettings.numberOfShards() == null
+                            ? 1
+                            : Integer.parseInt(indexSettings.numberOfShards());
+            for (int shard = 0; shard < count; shard++) {
+                shards.add(shardVersion(client, concrete.getKey(), uuid, shard, query));
+            }
+        }
+        return SynonymsVersion.format(shards);
+    }
+
+    /**
+     * Sequence numbers are only ordered within a shard, where the highest one moves with every
+     * write and the count with every deletion
+     */
+    private SynonymsVersion.Shard shardVersion(
+            OpenSearchClient client, String index, String uuid, int shard, String query)
+            throws Exception {
+        final SearchResult<Void> response =
+                clients.withRetries(
+                        () ->
+                                client.search(
+                                        s ->
+                                                s.index(index)
+                                                        .preference("_shards:" + shard)
+                                                        .query(query(query))
+                                                        .size(1)
+                                                        .source(c -> c.fetch(false))
+                                                        .trackTotalHits(t -> t.enabled(true))
+                                                        .seqNoPrimaryTerm(true)
+                                                        .sort(
+                                                                o ->
+                                                                        o.field(
+                                                                                f ->
+                                                                                        f.field(
+                                                                                                        "_seq_no")
+                                                                                                .order(
+                                                                                                        SortOrder
+                                                                                                                .Desc))),
+                                        Void.class));
+        final long total = response.hits().total().value();
+        final List<Hit<Void>> hits = response.hits().hits();
+        return new SynonymsVersion.Shard(
+                uuid,
+                shard,
+                total,
+                hits.isEmpty() ? -1 : hits.get(0).seqNo(),
+                hits.isEmpty() || hits.get(0).primaryTerm() == null
+                        ? 0
+                        : hits.get(0).primaryTerm());
+    }
+
+    private boolean exists(OpenSearchClient client, String index) throws Exception {
+        return clients.withRetries(() -> client.indices().exists(e -> e.index(index)).value());
+    }
+
+    @Override
+    public boolean load(
+            String index, String query, String[] fields, int pageSize, PageConsumer consumer)
+            throws Exception {
+        final boolean selected = fields.length > 0;
+        final OpenSearchClient client = createClient(selected);
+
+        // stream all the documents from the index one page at a time
+        // so that only a single page of hits is held in memory
+        String scrollId = null;
+        try {
+            if (!exists(client, index)) {
+                return false;
+            }
+
+            // only the first page is tried again, a page of a scroll
+            // may be lost if its request failed after reaching the cluster
+            SearchResult<RuleValues> response =
+                    clients.withRetries(
+                            () ->
+                                    client.search(
+                                            s -> {
+                                                s.index(index)
+                                                        .query(query(query))
+                                                        .size(pageSize)
+                                                        .sort(
+                                                                o ->
+                                                                        o.doc(
+                                                                                d ->
+                                                                                        d.order(
+                                                                                                SortOrder
+                                                                                                        .Asc)))
+                                                        .scroll(SCROLL_KEEP_ALIVE);
+                                                if (selected) {
+                                                    s.source(
+                                                            c ->
+                                                                    c.filter(
+                                                                            f ->
+                                                                                    f.includes(
+                                                                                            List.of(
+                                                                                                    fields))));
+                                                }
+                                                return s;
+                                            },
+                                            RuleValues.class));
+
+            while (true) {
+                scrollId = response.scrollId();
+                List<Hit<RuleValues>> hits = response.hits().hits();
+                if (hits.isEmpty()) {
+                    break;
+                }
+                consumer.accept(rules(hits));
+                if (hits.size() < pageSize || scrollId == null) {
+                    break;
+                }
+                final String currentScrollId = scrollId;
+                response =
+                        client.scroll(
+                                s -> s.scrollId(currentScrollId).scroll(SCROLL_KEEP_ALIVE),
+                                RuleValues.class);
+            }
+            return true;
+        } finally { // release the scroll context, the client is kept for the next loads
+            if (scrollId != null) {
+                final String currentScrollId = scrollId;
+                try {
+                    client.clearScroll(c -> c.scrollId(currentScrollId));
+                } catch (Exception e) {
+                    logger.warn("Could not clear scroll context for index {}", index, e);
+                }
+            }
+        }
+    }
+
+    /** Wraps the query selecting the rule documents, if any * */
+    private static Query query(String query) {
+        if (query == null) {
+            return MatchAllQuery.of(m -> m)._toQuery();
+        }
+        final String encoded =
+                Base64.getEncoder().encodeToString(query.getBytes(StandardCharsets.UTF_8));
+        return WrapperQuery.of(w -> w.query(encoded))._toQuery();
+    }
+
+    /** Extracts the rules from the source of the hits * */
+    private static List<String> rules(List<Hit<RuleValues>> hits) {
+        final List<String> rules = new ArrayList<>();
+        for (Hit<RuleValues> hit : hits) {
+            if (hit.source() != null) {
+                rules.addAll(hit.source().rules);
+            }
+        }
+        return rules;
+    }
+
+    /** The mapper which reads the rules of a document with the streaming deserializer * */
+    static ObjectMapper mapper(boolean nested) {
+        return jsonpMapper(nested).objectMapper();
+    }
+
+    private static JacksonJsonpMapper jsonpMapper(boolean nested) {
+        return nested ? NESTED_MAPPER : FLAT_MAPPER;
+    }
+
+    private static ObjectMapper newMapper(boolean nested) {
+        return new ObjectMapper()
+                .registerModule(
+                        new SimpleModule()
+                                .addDeserializer(
+                                        RuleValues.class, new RuleValuesDeserializer(nested)));
+    }
+
+    /** The rules found in the source of a document * */
+    static final class RuleValues {
+        private final List<String> rules;
+
+        RuleValues(List<String> rules) {
+            this.rules = rules;
+        }
+
+        List<String> rules() {
+            return rules;
+        }
+    }
+
+    /**
+     * Reads the rules from the source of a document as it is streamed, rather than building a tree
+     * of the whole document first. The rules are the values of the top level fields or, when fields
+     * were selected, all the values left in the filtered source.
+     */
+    private static final class RuleValuesDeserializer extends StdDeserializer<RuleValues> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final boolean nested;
+
+        RuleValuesDeserializer(boolean nested) {
+            super(RuleValues.class);
+            this.nested = nested;
+        }
+
+        @Override
+        public RuleValues deserialize(JsonParser parser, DeserializationContext context)
+                throws IOException {
+            final List<String> rules = new ArrayList<>();
+            if (parser.currentToken() == JsonToken.START_OBJECT) {
+                addObject(parser, rules);
+            } else {
+                parser.skipChildren();
+            }
+            return new RuleValues(rules);
+        }
+
+        private void addObject(JsonParser parser, List<String> rules) throws IOException {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_ARRAY) {
+                    JsonToken element;
+                    while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+                        addValue(parser, element, rules);
+                    }
+                } else {
+                    addValue(parser, token, rules);
+                }
+            }
+        }
+
+        private void addValue(JsonParser parser, JsonToken token, List<String> rules)
+                throws IOException {
+            if (token.isScalarValue() && token != JsonToken.VALUE_NULL) {
+                rules.add(parser.getText());
+            } else if (nested && token == JsonToken.START_OBJECT) {
+                addObject(parser, rules);
+            } else {
+                // only scalar values can be rules
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Creates a client to query the synonym index over the pooled connections, reading the rules
+     * from the values of nested fields too if asked to. It must not be shut down as that would
+     * close the pooled client.
+     */
+    private OpenSearchClient createClient(boolean nested) throws Exception {
+        final OpenSearchTransport transport =
+                new RestClientTransport(
+                        clients.client(host, port, username, password), jsonpMapper(nested));
+        return new OpenSearchClient(transport);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.util.List;
+import org.opensearch.client.node.NodeClient;
+import org.opensearch.core.common.Strings;
+import org.opensearch.rest.BaseRestHandler;
+import org.opensearch.rest.RestRequest;
+import org.opensearch.rest.action.RestActions;
+
+/**
+ * Rebuilds the synonym maps whose synonym index has changed under {@code
+ * _plugins/synonyms/_reload}, optionally on some nodes only with {@code
+ * _plugins/synonyms/{nodeId}/_reload}.
+ */
+public class RestSynonymsReloadAction extends BaseRestHandler {
+
+    @Override
+    public String getName() {
+        return "synonyms_reload_action";
+    }
+
+    @Override
+    public List<Route> routes() {
+        return List.of(
+                new Route(RestRequest.Method.POST, "/_plugins/synonyms/_reload"),
+                new Route(RestRequest.Method.POST, "/_plugins/synonyms/{nodeId}/_reload"));
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) {
+        final SynonymsReloadRequest reloadRequest =
+                new SynonymsReloadRequest(
+                        Strings.splitStringByCommaToArray(request.param("nodeId")));
+        reloadRequest.timeout(request.param("timeout"));
+        return channel ->
+                client.execute(
+                        SynonymsReloadAction.INSTANCE,
+                        reloadRequest,
+                        new RestActions.NodesResponseRestListener<>(channel));
+    }
+}
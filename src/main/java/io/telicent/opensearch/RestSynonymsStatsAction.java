@@ -0,0 +1,47 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.util.List;
+import org.opensearch.client.node.NodeClient;
+import org.opensearch.core.common.Strings;
+import org.opensearch.rest.BaseRestHandler;
+import org.opensearch.rest.RestRequest;
+import org.opensearch.rest.action.RestActions;
+
+/**
+ * Exposes the figures about the synonym maps under {@code _plugins/synonyms/_stats}, optionally
+ * restricted to some nodes with {@code _plugins/synonyms/{nodeId}/_stats}.
+ */
+public class RestSynonymsStatsAction extends BaseRestHandler {
+
+    @Override
+    public String getName() {
+        return "synonyms_stats_action";
+    }
+
+    @Override
+    public List<Route> routes() {
+        return List.of(
+                new Route(RestRequest.Method.GET, "/_plugins/synonyms/_stats"),
+                new Route(RestRequest.Method.GET, "/_plugins/synonyms/{nodeId}/_stats"));
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) {
+        final SynonymsStatsRequest statsRequest =
+                new SynonymsStatsRequest(
+                        Strings.splitStringByCommaToArray(request.param("nodeId")));
+        statsRequest.timeout(request.param("timeout"));
+        return channel ->
+                client.execute(
+                        SynonymsStatsAction.INSTANCE,
+                        statsRequest,
+                        new RestActions.NodesResponseRestListener<>(channel));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.apache.lucene.util.AttributeImpl;
+import org.apache.lucene.util.AttributeSource;
+import org.opensearch.common.cache.Cache;
+import org.opensearch.common.cache.CacheBuilder;
+
+/**
+ * Bounded cache of the token graphs produced by a synonym map, keyed by the sequence of tokens they
+ * were produced from. Hot queries are then expanded by replaying their graph rather than by going
+ * through the FST again. The cached graphs only hold for the map and overlay they were produced
+ * with, they are all dropped when either is replaced, see {@link #invalidate(SynonymMap,
+ * SynonymOverlay)}.
+ */
+public final class SynonymExpansionCache {
+
+    /** Queries with more tokens than this are expanded every time * */
+    static final int MAX_TOKENS = 64;
+
+    /**
+     * Identifies a sequence of input tokens, along with the attributes of the stream they were read
+     * from so that a graph is only replayed into a stream able to hold its attributes.
+     */
+    record Key(List<Class<? extends AttributeImpl>> layout, String tokens) {}
+
+    private record Generation(
+            SynonymMap map,
+            SynonymOverlay overlay,
+            Cache<Key, List<AttributeSource.State>> graphs) {}
+
+    private final long maxEntries;
+    private volatile Generation generation;
+
+    // kept across generations
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    SynonymExpansionCache(long maxEntries) {
+        this.maxEntries = maxEntries;
+        this.generation = new Generation(null, null, newCache());
+    }
+
+    private Cache<Key, List<AttributeSource.State>> newCache() {
+        return CacheBuilder.<Key, List<AttributeSource.State>>builder()
+                .setMaximumWeight(maxEntries)
+                .build();
+    }
+
+    /** Drops the cached graphs, only the ones of the given map are cached from now on * */
+    void invalidate(SynonymMap map, SynonymOverlay overlay) {
+        generation = new Generation(map, overlay, newCache());
+    }
+
+    /** Returns the graph produced by the map for the tokens, null if it is not cached * */
+    List<AttributeSource.State> get(SynonymMap map, SynonymOverlay overlay, Key key) {
+        final Generation current = generation;
+        final List<AttributeSource.State> graph =
+                current.map == map && current.overlay == overlay ? current.graphs.get(key) : null;
+        if (graph == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return graph;
+    }
+
+    /** Caches the graph produced by the map, unless it has been replaced in the meantime * */
+    void put(SynonymMap map, SynonymOverlay overlay, Key key, List<AttributeSource.State> graph) {
+        final Generation current = generation;
+        if (current.map == map && current.overlay == overlay) {
+            current.graphs.put(key, graph);
+        }
+    }
+
+    /** Number of graphs cached for the current map * */
+    public int entries() {
+        return generation.graphs.count();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+}
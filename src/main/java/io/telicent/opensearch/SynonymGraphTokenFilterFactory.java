@@ -7,13 +7,24 @@
  */
 package io.telicent.opensearch;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.synonym.SynonymGraphFilter;
 import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.opensearch.OpenSearchParseException;
+import org.opensearch.common.hash.MessageDigests;
 import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.common.xcontent.XContentFactory;
+import org.opensearch.common.xcontent.XContentHelper;
+import org.opensearch.common.xcontent.json.JsonXContent;
+import org.opensearch.core.common.bytes.BytesReference;
+import org.opensearch.core.xcontent.XContentBuilder;
 import org.opensearch.env.Environment;
 import org.opensearch.index.IndexSettings;
 import org.opensearch.index.analysis.AbstractTokenFilterFactory;
@@ -22,41 +33,149 @@ import org.opensearch.index.analysis.CharFilterFactory;
 import org.opensearch.index.analysis.CustomAnalyzer;
 import org.opensearch.index.analysis.TokenFilterFactory;
 import org.opensearch.index.analysis.TokenizerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Alternative implementation of the SynonymGraphTokenFilter which loads its dictionary from an
- * OpenSearch index instead of a file. Used at search time only and not during indexing.
+ * OpenSearch index instead of a file. Used at search time only unless index_time is set, in which
+ * case the map is pinned to a version of the synonym index so that every shard indexes its
+ * documents with the same synonyms.
  */
 public class SynonymGraphTokenFilterFactory extends AbstractTokenFilterFactory {
 
+    private static final Logger logger =
+            LoggerFactory.getLogger(SynonymGraphTokenFilterFactory.class);
+
     private final boolean expand;
     private final boolean lenient;
 
+    private static final boolean DEDUP = true;
+
+    /** Field matched against the name of the set of synonyms to load * */
+    static final String DEFAULT_SET_FIELD = "set_id";
+
     protected final String indexName;
-    protected final int port;
+    // selects the documents holding the rules, all of them if null
+    protected final String query;
+    // the fields holding the rules, all the top level ones if empty
+    protected final List<String> fields;
+    protected final int pageSize;
 
-    // always connect to localhost
-    protected final String host = "localhost";
+    // load the map in the background, passing the tokens through until it is ready
+    protected final boolean async;
+    // how long to wait for a map loaded in the background, zero not to wait
+    protected final TimeValue waitForReady;
 
+    // also used when indexing, with the map frozen at the pinned version of the synonym index
+    protected final boolean indexTime;
+    protected final String pinnedVersion;
+
+    // only set when the synonyms live in a remote cluster
+    protected final String host;
+    protected final int port;
     protected final String username;
     protected final String password;
 
+    private final IndexedSynonymsPlugin plugin;
+    private final SynonymsLoader loader;
+
     SynonymGraphTokenFilterFactory(
-            IndexSettings indexSettings, Environment env, String name, Settings settings) {
+            IndexSettings indexSettings,
+            Environment env,
+            String name,
+            Settings settings,
+            IndexedSynonymsPlugin plugin) {
         super(indexSettings, name, settings);
+        this.plugin = plugin;
 
         this.expand = settings.getAsBoolean("expand", true);
         this.lenient = settings.getAsBoolean("lenient", false);
         this.indexName = settings.get("index", ".synonyms");
+        this.query = query(name, settings);
+        this.fields = settings.getAsList("fields", List.of());
+        this.pageSize = settings.getAsInt("page_size", IndexedSynonymParser.DEFAULT_PAGE_SIZE);
+        this.indexTime = settings.getAsBoolean("index_time", false);
+        this.pinnedVersion = settings.get("version");
+        // documents must never be indexed without their synonyms
+        this.async = !indexTime && settings.getAsBoolean("async", plugin.asyncLoad());
+        this.waitForReady = settings.getAsTime("wait_for_ready", TimeValue.ZERO);
+        this.host = settings.get("host");
+        this.port = settings.getAsInt("port", 9200);
         this.username = settings.get("username");
         this.password = settings.get("password");
 
-        this.port = env.settings().getAsInt("http.port", 9200);
+        // the synonyms are read with the client of the node unless they live elsewhere
+        if (host == null) {
+            plugin.checkIndexAllowed(indexName);
+            this.loader = plugin.localLoader();
+        } else {
+            this.loader = plugin.remoteLoader(host, port, username, password);
+        }
+    }
+
+    /**
+     * Reads the query selecting the synonym documents, either given as is or as the name of a set
+     * of synonyms, which is matched against the field set_field.
+     */
+    static String query(String name, Settings settings) {
+        final String set = settings.get("set");
+        final String query = settings.get("query");
+        if (set != null && query != null) {
+            throw new IllegalArgumentException(
+                    "[set] and [query] cannot be both set on filter [" + name + "]");
+        }
+        try {
+            if (set != null) {
+                final XContentBuilder term =
+                        XContentFactory.jsonBuilder()
+                                .startObject()
+                                .startObject("term")
+                                .field(settings.get("set_field", DEFAULT_SET_FIELD), set)
+                                .endObject()
+                                .endObject();
+                return BytesReference.bytes(term).utf8ToString();
+            }
+            if (query != null) {
+                // fail early on malformed queries and normalise the others
+                // so that equivalent filters share their synonym map
+                final Map<String, Object> parsed =
+                        XContentHelper.convertToMap(JsonXContent.jsonXContent, query, true);
+                return BytesReference.bytes(XContentFactory.jsonBuilder().map(parsed))
+                        .utf8ToString();
+            }
+            return null;
+        } catch (IOException | OpenSearchParseException e) {
+            throw new IllegalArgumentException(
+                    "invalid [query] on filter [" + name + "]: " + e.getMessage(), e);
+        }
+    }
+
+    /** Identifies the synonym index, qualified with its cluster if it is a remote one * */
+    String sourceName() {
+        return host == null ? indexName : host + ":" + port + "/" + indexName;
+    }
+
+    /**
+     * Hash of the credentials a remote synonym index is read with, so that the maps of users who
+     * may see different documents are kept apart without holding the password. Null if there are
+     * none.
+     */
+    static String credentials(String username, String password) {
+        if (username == null) {
+            return null;
+        }
+        final byte[] digest =
+                MessageDigests.sha256()
+                        .digest(
+                                (username + ":" + (password == null ? "" : password))
+                                        .getBytes(StandardCharsets.UTF_8));
+        return MessageDigests.toHexString(digest);
     }
 
     @Override
     public AnalysisMode getAnalysisMode() {
-        return AnalysisMode.SEARCH_TIME;
+        return indexTime ? AnalysisMode.ALL : AnalysisMode.SEARCH_TIME;
     }
 
     @Override
@@ -73,48 +192,221 @@ public class SynonymGraphTokenFilterFactory extends AbstractTokenFilterFactory {
             Function<String, TokenFilterFactory> allFilters) {
         final Analyzer analyzer =
                 buildSynonymAnalyzer(tokenizer, charFilters, previousTokenFilters, allFilters);
-        final SynonymMap synonyms = buildSynonyms(analyzer);
-        final String name = name();
-        return new TokenFilterFactory() {
-            @Override
-            public String name() {
-                return name;
-            }
+        final String chainFingerprint =
+                SynonymMapCache.fingerprint(
+                        indexSettings, tokenizer, charFilters, previousTokenFilters);
+        // holds the map for as long as the analyzers of the index service use this chain
+        final Object owner = new Object();
+        return new ChainAwareFactory(
+                analyzer, buildSynonyms(analyzer, chainFingerprint, owner), owner);
+    }
 
-            @Override
-            public TokenStream create(TokenStream tokenStream) {
-                return synonyms.fst == null
-                        ? tokenStream
-                        : new SynonymGraphFilter(tokenStream, synonyms, false);
-            }
+    /** This filter specialised for an analysis chain, which the rules are analysed with * */
+    final class ChainAwareFactory implements TokenFilterFactory {
+
+        private final Analyzer analyzer;
+        private final ReloadableSynonymMap synonyms;
+        // the map is released once this is collected, should the service close without notice
+        private final Object owner;
+
+        ChainAwareFactory(Analyzer analyzer, ReloadableSynonymMap synonyms, Object owner) {
+            this.analyzer = analyzer;
+            this.synonyms = synonyms;
+            this.owner = owner;
+        }
+
+        @Override
+        public String name() {
+            return SynonymGraphTokenFilterFactory.this.name();
+        }
+
+        @Override
+        public TokenStream create(TokenStream tokenStream) {
+            return new ReloadableSynonymGraphFilter(tokenStream, synonyms, indexTime);
+        }
 
-            @Override
-            public AnalysisMode getAnalysisMode() {
-                return AnalysisMode.SEARCH_TIME;
+        @Override
+        public AnalysisMode getAnalysisMode() {
+            return SynonymGraphTokenFilterFactory.this.getAnalysisMode();
+        }
+
+        /**
+         * Builds a map from the synonym index, or from the given rules if not null, the way this
+         * filter would but without installing it. Every invalid rule is reported rather than
+         * failing on the first one.
+         */
+        SynonymsCompileResponse compile(List<String> rules) throws Exception {
+            final IndexedSynonymParser parser =
+                    new IndexedSynonymParser(
+                            loader,
+                            indexName,
+                            query,
+                            fields.toArray(new String[0]),
+                            pageSize,
+                            expand,
+                            DEDUP,
+                            lenient,
+                            analyzer,
+                            null,
+                            1,
+                            plugin.breaker());
+            final long start = System.nanoTime();
+            if (rules == null) {
+                parser.check();
+            } else {
+                parser.check(rules);
             }
-        };
+            final long loaded = System.nanoTime();
+            final SynonymMap map = parser.build();
+            final long built = System.nanoTime();
+            return new SynonymsCompileResponse(
+                    name(),
+                    rules == null ? sourceName() : null,
+                    parser.synonymsLoaded(),
+                    parser.invalidCount(),
+                    parser.invalidRules(),
+                    parser.lenientSkipped(),
+                    map.fst == null ? 0 : map.fst.ramBytesUsed(),
+                    map.words.size(),
+                    map.words.ramBytesUsed(),
+                    TimeUnit.NANOSECONDS.toMillis(loaded - start),
+                    TimeUnit.NANOSECONDS.toMillis(built - loaded));
+        }
     }
 
-    SynonymMap buildSynonyms(Analyzer analyzer) {
+    ReloadableSynonymMap buildSynonyms(Analyzer analyzer, String chainFingerprint, Object owner) {
+        final SynonymMapCache.Key key =
+                new SynonymMapCache.Key(
+                        sourceName(),
+                        credentials(username, password),
+                        this.fields,
+                        this.query,
+                        this.expand,
+                        this.lenient,
+                        DEDUP,
+                        chainFingerprint,
+                        indexTime ? pinnedVersion : null);
         try {
-            IndexedSynonymParser parser =
-                    new IndexedSynonymParser(
-                            host,
-                            port,
-                            username,
-                            password,
-                            this.indexName,
-                            this.expand,
-                            true,
-                            this.lenient,
-                            analyzer);
-            parser.parse();
-            return parser.build();
+            if (indexTime && pinnedVersion == null) {
+                throw new IllegalArgumentException(
+                        "[version] must be set on filter ["
+                                + name()
+                                + "] used at index time, set it to ["
+                                + loader.version(indexName, query)
+                                + "] to pin the current content of index ["
+                                + sourceName()
+                                + "]");
+            }
+            if (async) {
+                return acquireAsync(key, analyzer, owner);
+            }
+            return plugin.synonymMapCache()
+                    .acquire(
+                            key,
+                            index(),
+                            owner,
+                            indexSettings,
+                            new IndexSource(analyzer),
+                            plugin.loadExecutor());
+        } catch (IllegalArgumentException e) {
+            throw e;
         } catch (Exception e) {
             throw new IllegalArgumentException("failed to build synonyms", e);
         }
     }
 
+    private ReloadableSynonymMap acquireAsync(
+            SynonymMapCache.Key key, Analyzer analyzer, Object owner) throws InterruptedException {
+        final ReloadableSynonymMap synonyms =
+                plugin.synonymMapCache()
+                        .acquireAsync(
+                                key,
+                                index(),
+                                owner,
+                                indexSettings,
+                                new IndexSource(analyzer),
+                                plugin.loadExecutor());
+        if (waitForReady.millis() > 0
+                && !synonyms.awaitReady(waitForReady.millis(), TimeUnit.MILLISECONDS)) {
+            logger.warn(
+                    "Synonyms from index {} not loaded after {}, filter [{}] passes tokens through until they are",
+                    sourceName(),
+                    waitForReady,
+                    name());
+        }
+        return synonyms;
+    }
+
+    /** Loads the synonyms from the configured index with the given analyzer * */
+    private class IndexSource implements ReloadableSynonymMap.Source {
+
+        private final Analyzer analyzer;
+
+        IndexSource(Analyzer analyzer) {
+            this.analyzer = analyzer;
+        }
+
+        private IndexedSynonymParser newParser() {
+            return new IndexedSynonymParser(
+                    loader,
+                    indexName,
+                    query,
+                    fields.toArray(new String[0]),
+                    pageSize,
+                    expand,
+                    DEDUP,
+                    lenient,
+                    analyzer,
+                    plugin.buildExecutor(),
+                    plugin.buildParallelism(),
+                    plugin.breaker());
+        }
+
+        @Override
+        public String version() throws Exception {
+            return newParser().version();
+        }
+
+        @Override
+        public SynonymMap build(ReloadableSynonymMap.BuildInfo info) throws Exception {
+            final IndexedSynonymParser parser = newParser();
+            final long start = System.nanoTime();
+            parser.parse();
+            info.loadNanos(System.nanoTime() - start);
+            info.rules(parser.synonymsLoaded(), parser.lenientSkipped());
+            final SynonymMap map = parser.build();
+            if (parser.loadFailure() != null) {
+                throw new ReloadableSynonymMap.IncompleteException(map, parser.loadFailure());
+            }
+            return map;
+        }
+
+        @Override
+        public List<IndexedSynonymParser.Mapping> additions(String since, String current)
+                throws Exception {
+            final List<SynonymsVersion.Shard> before = SynonymsVersion.parse(since);
+            final List<SynonymsVersion.Shard> after = SynonymsVersion.parse(current);
+            // sequence numbers are only ordered within a shard, so the documents
+            // written since can only be told apart when there is a single one
+            if (before == null || after == null || before.size() != 1 || after.size() != 1) {
+                return null;
+            }
+            final SynonymsVersion.Shard previous = before.get(0);
+            final SynonymsVersion.Shard latest = after.get(0);
+            if (!previous.uuid().equals(latest.uuid())
+                    || previous.shard() != latest.shard()
+                    // operations may have been rolled back when the primary changed
+                    || (previous.count() > 0 && previous.primaryTerm() != latest.primaryTerm())) {
+                return null;
+            }
+            final long added = latest.count() - previous.count();
+            if (added <= 0) {
+                return null;
+            }
+            return newParser().additions(previous.maxSeqNo(), latest.maxSeqNo(), added);
+        }
+    }
+
     Analyzer buildSynonymAnalyzer(
             TokenizerFactory tokenizer,
             List<CharFilterFactory> charFilters,
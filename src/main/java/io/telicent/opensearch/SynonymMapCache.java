@@ -0,0 +1,551 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import org.opensearch.common.hash.MessageDigests;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.core.common.breaker.CircuitBreaker;
+import org.opensearch.core.common.breaker.NoopCircuitBreaker;
+import org.opensearch.core.index.Index;
+import org.opensearch.index.IndexSettings;
+import org.opensearch.index.analysis.CharFilterFactory;
+import org.opensearch.index.analysis.TokenFilterFactory;
+import org.opensearch.index.analysis.TokenizerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Node-wide cache of the synonym maps built from synonym indices. Indices which use the same
+ * synonym index with the same options and an equivalent analysis chain share a single map, which is
+ * evicted once the last index holding it has been removed from the node. The maps follow the
+ * content of their synonym index, see {@link #reloadAll()}.
+ *
+ * <p>A map is held by owners on behalf of an index service. Several services can exist for the same
+ * index, for instance a temporary one processing mappings next to the one serving the shards, so
+ * the owners of each index are counted. An owner which is garbage collected without its service
+ * having been released, as temporary services are closed without notice, releases its maps on the
+ * next call to the cache.
+ */
+public class SynonymMapCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SynonymMapCache.class);
+
+    /**
+     * Identifies a synonym map, two equal keys always produce identical maps. The credentials are a
+     * hash of the ones a remote synonym index is read with, which may not see the same documents.
+     * The map of a key with a pinned version is only ever built from that version of the synonym
+     * index and never reloaded.
+     */
+    public record Key(
+            String index,
+            String credentials,
+            List<String> fields,
+            String query,
+            boolean expand,
+            boolean lenient,
+            boolean dedup,
+            String chainFingerprint,
+            String pinnedVersion) {
+
+        /** Key of a synonym index read without credentials * */
+        public Key(
+                String index,
+                List<String> fields,
+                String query,
+                boolean expand,
+                boolean lenient,
+                boolean dedup,
+                String chainFingerprint,
+                String pinnedVersion) {
+            this(
+                    index,
+                    null,
+                    fields,
+                    query,
+                    expand,
+                    lenient,
+                    dedup,
+                    chainFingerprint,
+                    pinnedVersion);
+        }
+
+        /** The same key without any pinned version * */
+        public Key unpinned() {
+            return pinnedVersion == null
+                    ? this
+                    : new Key(
+                            index,
+                            credentials,
+                            fields,
+                            query,
+                            expand,
+                            lenient,
+                            dedup,
+                            chainFingerprint,
+                            null);
+        }
+    }
+
+    private static final class Entry {
+        final ReloadableSynonymMap map;
+        // completed once the first attempt to load the map is over
+        final CompletableFuture<ReloadableSynonymMap> loaded = new CompletableFuture<>();
+        // number of owners holding the map for each index
+        final Map<Index, Integer> holders = new HashMap<>();
+
+        Entry(ReloadableSynonymMap map) {
+            this.map = map;
+        }
+    }
+
+    /** The maps acquired by an owner, released with its service or once the owner is collected * */
+    private static final class Holder extends WeakReference<Object> {
+        final Index index;
+        // an owner which is its own service is only released explicitly
+        final Object service;
+        // the entries the owner counts in, guarded by the cache
+        final Map<Key, Entry> entries = new HashMap<>();
+
+        Holder(Object owner, Index index, Object service, ReferenceQueue<Object> queue) {
+            super(owner, queue);
+            this.index = index;
+            this.service = service;
+        }
+    }
+
+    // guarded by this
+    private final Map<Key, Entry> entries = new HashMap<>();
+    // guarded by this
+    private final Map<Object, Holder> holders = new WeakHashMap<>();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+    private final SynonymMapSnapshots snapshots;
+    private final SynonymMapTransfer transfer;
+    private final CircuitBreaker breaker;
+    private final long expansionCacheSize;
+    private final int overlayMaxMappings;
+
+    public SynonymMapCache() {
+        this(SynonymMapSnapshots.NONE);
+    }
+
+    /** Creates a cache which keeps a snapshot of the maps it builds * */
+    public SynonymMapCache(SynonymMapSnapshots snapshots) {
+        this(snapshots, 0);
+    }
+
+    /**
+     * Creates a cache whose maps also cache the expansions of up to the given number of token
+     * sequences each, see {@link SynonymExpansionCache}.
+     */
+    public SynonymMapCache(SynonymMapSnapshots snapshots, long expansionCacheSize) {
+        this(snapshots, expansionCacheSize, 0);
+    }
+
+    /**
+     * Creates a cache whose maps also apply the rules added to their synonym index on top of their
+     * content, as long as they expand to at most overlayMaxMappings mappings, before being rebuilt,
+     * see {@link SynonymOverlay}.
+     */
+    public SynonymMapCache(
+            SynonymMapSnapshots snapshots, long expansionCacheSize, int overlayMaxMappings) {
+        this(
+                snapshots,
+                SynonymMapTransfer.NONE,
+                new NoopCircuitBreaker(IndexedSynonymsPlugin.BREAKER_NAME),
+                expansionCacheSize,
+                overlayMaxMappings);
+    }
+
+    /**
+     * Same as above, with the maps built by other nodes received through the transfer and the
+     * memory taken by the maps held accounted for by the breaker
+     */
+    public SynonymMapCache(
+            SynonymMapSnapshots snapshots,
+            SynonymMapTransfer transfer,
+            CircuitBreaker breaker,
+            long expansionCacheSize,
+            int overlayMaxMappings) {
+        this.snapshots = snapshots;
+        this.transfer = transfer;
+        this.breaker = breaker;
+        this.expansionCacheSize = expansionCacheSize;
+        this.overlayMaxMappings = overlayMaxMappings;
+    }
+
+    /**
+     * Returns the map for the key, loading it from the source if no other index holds it yet.
+     * Concurrent callers asking for the same key wait for a single load. A map which is already
+     * cached is rebuilt first if the content of its synonym index has changed. The index is
+     * registered as a holder of the map until {@link #release(Object)} is called for it.
+     */
+    public ReloadableSynonymMap acquire(Key key, Index holder, ReloadableSynonymMap.Source source)
+            throws Exception {
+        return acquire(key, holder, holder, holder, source, Runnable::run);
+    }
+
+    /**
+     * Same as above for an owner holding the map on behalf of a service of the index, until the
+     * service is released or the owner is collected. A map which is already cached is returned
+     * straight away and checked for changes on the executor, so that creating an index does not
+     * wait for the synonym index.
+     */
+    public ReloadableSynonymMap acquire(
+            Key key,
+            Index holder,
+            Object owner,
+            Object service,
+            ReloadableSynonymMap.Source source,
+            Executor checks)
+            throws Exception {
+        final Registration registration = register(key, holder, owner, service, source);
+        final Entry entry = registration.entry();
+        final boolean load = registration.created();
+
+        if (load) {
+            try {
+                entry.map.load();
+            } catch (Exception e) {
+                synchronized (this) {
+                    entries.remove(key, entry);
+                }
+                entry.map.release();
+                entry.loaded.completeExceptionally(e);
+                throw e;
+            }
+            entry.loaded.complete(entry.map);
+            return entry.map;
+        }
+
+        final ReloadableSynonymMap map;
+        try {
+            map = entry.loaded.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+        logger.debug("Reusing synonym map for index {} held by {}", key.index(), holder);
+        checks.execute(() -> reload(key, map));
+        return map;
+    }
+
+    /**
+     * Returns the map for the key straight away, loading it or checking it for changes on the
+     * executor. The map is empty until its first load succeeds, see {@link
+     * ReloadableSynonymMap#isReady()}. A map which fails to load stays in the cache and is tried
+     * again on the next reload.
+     */
+    public ReloadableSynonymMap acquireAsync(
+            Key key, Index holder, ReloadableSynonymMap.Source source, Executor executor) {
+        return acquireAsync(key, holder, holder, holder, source, executor);
+    }
+
+    /** Same as above for an owner holding the map on behalf of a service of the index * */
+    public ReloadableSynonymMap acquireAsync(
+            Key key,
+            Index holder,
+            Object owner,
+            Object service,
+            ReloadableSynonymMap.Source source,
+            Executor executor) {
+        final Registration registration = register(key, holder, owner, service, source);
+        final Entry entry = registration.entry();
+        final boolean load = registration.created();
+
+        if (load) {
+            executor.execute(
+                    () -> {
+                        try {
+                            entry.map.load();
+                        } catch (Exception e) {
+                            logger.error(
+                                    "Could not load the synonyms from index {}", key.index(), e);
+                        } finally {
+                            entry.loaded.complete(entry.map);
+                        }
+                    });
+        } else if (entry.loaded.isDone() && !entry.loaded.isCompletedExceptionally()) {
+            executor.execute(() -> reload(key, entry.map));
+        }
+        return entry.map;
+    }
+
+    private record Registration(Entry entry, boolean created) {}
+
+    /** Gets or creates the entry of the key, counting the owner in if it is not yet * */
+    private Registration register(
+            Key key,
+            Index holder,
+            Object owner,
+            Object service,
+            ReloadableSynonymMap.Source source) {
+        final Entry entry;
+        final List<Key> inUse;
+        synchronized (this) {
+            releaseCollected();
+            Entry existing = entries.get(key);
+            if (existing == null) {
+                existing =
+                        new Entry(
+                                new ReloadableSynonymMap(
+                                        key,
+                                        source,
+                                        snapshots,
+                                        transfer,
+                                        breaker,
+                                        expansionCacheSize,
+                                        overlayMaxMappings));
+                entries.put(key, existing);
+                inUse = new ArrayList<>(entries.keySet());
+            } else {
+                inUse = null;
+            }
+            final Holder ownerHolder =
+                    holders.computeIfAbsent(owner, o -> new Holder(o, holder, service, collected));
+            if (ownerHolder.entries.put(key, existing) != existing) {
+                existing.holders.merge(holder, 1, Integer::sum);
+            }
+            entry = existing;
+        }
+        if (inUse != null) {
+            snapshots.deleteSuperseded(key, inUse);
+        }
+        return new Registration(entry, inUse != null);
+    }
+
+    /** Releases the maps held for a service, evicting those which are not held anymore * */
+    public void release(Object service) {
+        release(service, false);
+    }
+
+    /**
+     * Same as above, also deleting the snapshots of the evicted maps if discardSnapshots is set,
+     * for an index which is not coming back to the node
+     */
+    public synchronized void release(Object service, boolean discardSnapshots) {
+        releaseCollected();
+        final Iterator<Holder> iter = holders.values().iterator();
+        while (iter.hasNext()) {
+            final Holder holder = iter.next();
+            if (holder.service.equals(service)) {
+                iter.remove();
+                // not to be released again once collected
+                holder.clear();
+                release(holder, discardSnapshots);
+            }
+        }
+    }
+
+    // guarded by this
+    private void release(Holder holder, boolean discardSnapshots) {
+        for (Map.Entry<Key, Entry> held : holder.entries.entrySet()) {
+            final Key key = held.getKey();
+            final Entry entry = held.getValue();
+            if (entries.get(key) != entry) {
+                // failed to load and dropped already
+                continue;
+            }
+            if (entry.holders.merge(holder.index, -1, Integer::sum) <= 0) {
+                entry.holders.remove(holder.index);
+            }
+            if (entry.holders.isEmpty()) {
+                logger.debug("Evicting synonym map for index {}", key.index());
+                entry.map.release();
+                entries.remove(key);
+                if (discardSnapshots) {
+                    snapshots.delete(key);
+                }
+            }
+        }
+        holder.entries.clear();
+    }
+
+    /** Releases the maps of the owners collected without having released them * */
+    private synchronized void releaseCollected() {
+        for (Object ref = collected.poll(); ref != null; ref = collected.poll()) {
+            final Holder holder = (Holder) ref;
+            logger.debug("Releasing synonym maps of a closed service of index {}", holder.index);
+            release(holder, false);
+        }
+    }
+
+    /**
+     * Checks the synonym index of every cached map and rebuilds the ones whose content has changed.
+     * A map which fails to rebuild keeps serving its previous content. Maps with too many mappings
+     * overlaid are rebuilt straight away.
+     *
+     * @return the number of maps which have been rebuilt
+     */
+    public int reloadAll() {
+        return reloadAll(Runnable::run);
+    }
+
+    /**
+     * Same as {@link #reloadAll()} but the maps with too many mappings overlaid are rebuilt on the
+     * executor, so that the others get their changes without waiting.
+     */
+    public int reloadAll(Executor compactions) {
+        final List<Map.Entry<Key, Entry>> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(entries.entrySet());
+        }
+        int reloaded = 0;
+        for (Map.Entry<Key, Entry> e : snapshot) {
+            if (!e.getValue().loaded.isDone()) {
+                // still loading, will have the latest content anyway
+                continue;
+            }
+            final ReloadableSynonymMap map = e.getValue().map;
+            if (reload(e.getKey(), map)) {
+                reloaded++;
+            }
+            if (map.needsCompaction()) {
+                compactions.execute(() -> compact(e.getKey(), map));
+            }
+        }
+        return reloaded;
+    }
+
+    private static void compact(Key key, ReloadableSynonymMap map) {
+        try {
+            map.compact();
+        } catch (Exception ex) {
+            logger.error("Could not compact the synonyms from index {}", key.index(), ex);
+        }
+    }
+
+    private static boolean reload(Key key, ReloadableSynonymMap map) {
+        try {
+            return map.reloadIfChanged();
+        } catch (Exception ex) {
+            logger.error("Could not reload the synonyms from index {}", key.index(), ex);
+            return false;
+        }
+    }
+
+    /**
+     * Serializes the map of the key built from the given version of its synonym index, for a node
+     * holding the given index which does not build the map itself. Never waits for the map to be
+     * loaded or rebuilt.
+     *
+     * @return null if this node does not build the map, does not hold it or holds another version
+     */
+    public byte[] export(Key key, String holder, String version) throws Exception {
+        if (!transfer.builds(key, holder)) {
+            return null;
+        }
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null || !entry.loaded.isDone()) {
+            return null;
+        }
+        return entry.map.export(version);
+    }
+
+    /** Names of the indices of this node holding the map of the key, sorted * */
+    public synchronized List<String> holders(Key key) {
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            return List.of();
+        }
+        final List<String> names = new ArrayList<>(entry.holders.size());
+        for (Index holder : entry.holders.keySet()) {
+            names.add(holder.getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /** Number of distinct maps currently cached * */
+    public synchronized int size() {
+        releaseCollected();
+        return entries.size();
+    }
+
+    /** Figures about the cached maps, including the ones still loading * */
+    public synchronized List<SynonymMapStats> stats() {
+        releaseCollected();
+        final List<SynonymMapStats> stats = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            final List<String> indices = new ArrayList<>(entry.holders.size());
+            for (Index holder : entry.holders.keySet()) {
+                indices.add(holder.getName());
+            }
+            Collections.sort(indices);
+            stats.add(entry.map.stats(indices));
+        }
+        return stats;
+    }
+
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            entry.map.release();
+        }
+        entries.clear();
+        holders.clear();
+    }
+
+    public CircuitBreaker breaker() {
+        return breaker;
+    }
+
+    public SynonymMapSnapshots snapshots() {
+        return snapshots;
+    }
+
+    /**
+     * Computes a fingerprint of an analysis chain. Components are identified by their name and, for
+     * the ones defined in the settings of the index, by their definition so that components with
+     * the same name in different indices are not confused.
+     */
+    public static String fingerprint(
+            IndexSettings indexSettings,
+            TokenizerFactory tokenizer,
+            List<CharFilterFactory> charFilters,
+            List<TokenFilterFactory> tokenFilters) {
+        final Settings analysis = indexSettings.getSettings().getByPrefix("index.analysis.");
+        final StringBuilder chain = new StringBuilder();
+        chain.append(indexSettings.getIndexVersionCreated()).append('|');
+        appendComponent(chain, analysis, "tokenizer", tokenizer.name());
+        for (CharFilterFactory charFilter : charFilters) {
+            appendComponent(chain, analysis, "char_filter", charFilter.name());
+        }
+        for (TokenFilterFactory tokenFilter : tokenFilters) {
+            appendComponent(chain, analysis, "filter", tokenFilter.name());
+        }
+        final MessageDigest digest = MessageDigests.sha256();
+        digest.update(chain.toString().getBytes(StandardCharsets.UTF_8));
+        return MessageDigests.toHexString(digest.digest());
+    }
+
+    private static void appendComponent(
+            StringBuilder chain, Settings analysis, String type, String name) {
+        chain.append(type).append(':').append(name);
+        // settings are sorted by key so the definition is stable
+        chain.append(analysis.getAsSettings(type + "." + name)).append('|');
+    }
+}
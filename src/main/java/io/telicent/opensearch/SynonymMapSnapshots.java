@@ -0,0 +1,289 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.store.BufferedChecksumIndexInput;
+import org.apache.lucene.store.ByteBuffersDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.store.ByteBuffersIndexInput;
+import org.apache.lucene.store.ByteBuffersIndexOutput;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.fst.ByteSequenceOutputs;
+import org.apache.lucene.util.fst.FST;
+import org.opensearch.Version;
+import org.opensearch.common.hash.MessageDigests;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores compiled synonym maps on the local disk of the node so that they can be loaded without
+ * going back to the synonym index when it has not changed since. There is one snapshot file per
+ * cache key, which records the version of the synonym index it was built from and is replaced when
+ * a newer version gets built. A snapshot is deleted once the synonym index has moved past its
+ * version, once the map is evicted for good and, for a pinned version, once another version of the
+ * same map is pinned instead. Snapshots written by another version of OpenSearch or Lucene are
+ * never read. A restored map is read onto the heap like a built one, the snapshot file is not kept
+ * open.
+ */
+public class SynonymMapSnapshots implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SynonymMapSnapshots.class);
+
+    private static final String CODEC = "telicent_synonyms";
+    // records the versions of OpenSearch and Lucene which wrote the snapshot
+    private static final int FORMAT_PLATFORM = 1;
+    private static final int FORMAT_CURRENT = FORMAT_PLATFORM;
+
+    private static final String EXTENSION = ".syn";
+
+    /** Does not store anything * */
+    public static final SynonymMapSnapshots NONE = new SynonymMapSnapshots(null);
+
+    private final Directory directory;
+
+    private SynonymMapSnapshots(Directory directory) {
+        this.directory = directory;
+    }
+
+    /** Opens the snapshots kept in a directory, creating it if needed * */
+    public static SynonymMapSnapshots open(Path path) throws IOException {
+        return new SynonymMapSnapshots(FSDirectory.open(path));
+    }
+
+    /**
+     * Returns the map stored for the key if it was built from the given version of the synonym
+     * index, null otherwise. A snapshot of another version is deleted.
+     */
+    public SynonymMap read(SynonymMapCache.Key key, String version) {
+        if (directory == null || version == null) {
+            return null;
+        }
+        final String name = fileName(key);
+        try (ChecksumIndexInput in = directory.openChecksumInput(name, IOContext.READONCE)) {
+            final SynonymMap map = read(in, version);
+            if (map != null) {
+                logger.info(
+                        "Synonym map for index {} restored from snapshot at version {}",
+                        key.index(),
+                        version);
+            } else {
+                logger.debug("Discarding outdated synonym snapshot {}", name);
+                delete(name);
+            }
+            return map;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            logger.warn("Discarding unreadable synonym snapshot {}", name, e);
+            delete(name);
+            return null;
+        }
+    }
+
+    /** Stores the map built for the key from the given version of the synonym index * */
+    public void write(SynonymMapCache.Key key, String version, SynonymMap map) {
+        if (directory == null || version == null) {
+            return;
+        }
+        final String name = fileName(key);
+        String tmpName = null;
+        try {
+            try (IndexOutput out = directory.createTempOutput(name, "tmp", IOContext.DEFAULT)) {
+                tmpName = out.getName();
+                write(out, version, map);
+            }
+            directory.sync(List.of(tmpName));
+            directory.rename(tmpName, name);
+            directory.syncMetaData();
+        } catch (IOException e) {
+            logger.warn("Could not write synonym snapshot for index {}", key.index(), e);
+            if (tmpName != null) {
+                delete(tmpName);
+            }
+        }
+    }
+
+    /** Deletes the snapshot of the key, if any * */
+    public void delete(SynonymMapCache.Key key) {
+        if (directory != null) {
+            delete(fileName(key));
+        }
+    }
+
+    /**
+     * Deletes the snapshots of the other pinned versions of the map of the key, except the ones of
+     * the keys still in use
+     */
+    public void deleteSuperseded(SynonymMapCache.Key key, Collection<SynonymMapCache.Key> inUse) {
+        if (directory == null || key.pinnedVersion() == null) {
+            return;
+        }
+        final Set<String> kept = new HashSet<>();
+        for (SynonymMapCache.Key used : inUse) {
+            kept.add(fileName(used));
+        }
+        final String prefix = baseName(key) + "-";
+        try {
+            for (String name : directory.listAll()) {
+                if (name.startsWith(prefix) && name.endsWith(EXTENSION) && !kept.contains(name)) {
+                    logger.debug("Deleting superseded synonym snapshot {}", name);
+                    delete(name);
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Could not list synonym snapshots", e);
+        }
+    }
+
+    /**
+     * Writes a map and the version it was built from, preceded by the versions of OpenSearch and
+     * Lucene and followed by a checksum
+     */
+    static void write(IndexOutput out, String version, SynonymMap map) throws IOException {
+        CodecUtil.writeHeader(out, CODEC, FORMAT_CURRENT);
+        out.writeVInt(Version.CURRENT.id);
+        out.writeString(org.apache.lucene.util.Version.LATEST.toString());
+        out.writeString(version);
+        out.writeVInt(map.maxHorizontalContext);
+        final int words = map.words.size();
+        out.writeVInt(words);
+        final BytesRef scratch = new BytesRef();
+        for (int ord = 0; ord < words; ord++) {
+            map.words.get(ord, scratch);
+            out.writeVInt(scratch.length);
+            out.writeBytes(scratch.bytes, scratch.offset, scratch.length);
+        }
+        if (map.fst == null) {
+            out.writeByte((byte) 0);
+        } else {
+            out.writeByte((byte) 1);
+            map.fst.save(out, out);
+        }
+        CodecUtil.writeFooter(out);
+    }
+
+    /** Serializes a map like {@link #write} so that it can be sent to another node * */
+    static byte[] serialize(String version, SynonymMap map) throws IOException {
+        final ByteBuffersDataOutput bytes = new ByteBuffersDataOutput();
+        try (IndexOutput out = new ByteBuffersIndexOutput(bytes, "synonym map", "transfer")) {
+            write(out, version, map);
+        }
+        return bytes.toArrayCopy();
+    }
+
+    /**
+     * Reads a map serialized by {@link #serialize}, null if it was built from another version
+     *
+     * @throws CorruptIndexException if the bytes do not match their checksum
+     */
+    static SynonymMap deserialize(byte[] bytes, String version) throws IOException {
+        try (ChecksumIndexInput in =
+                new BufferedChecksumIndexInput(
+                        new ByteBuffersIndexInput(
+                                new ByteBuffersDataInput(List.of(ByteBuffer.wrap(bytes))),
+                                "synonym map"))) {
+            return read(in, version);
+        }
+    }
+
+    /**
+     * Reads a map written by {@link #write}, null if it was built from another version or written
+     * by another version of OpenSearch or Lucene
+     */
+    static SynonymMap read(ChecksumIndexInput in, String version) throws IOException {
+        // the snapshots of the first format do not say what wrote them
+        CodecUtil.checkHeader(in, CODEC, FORMAT_PLATFORM, FORMAT_CURRENT);
+        if (in.readVInt() != Version.CURRENT.id
+                || !in.readString().equals(org.apache.lucene.util.Version.LATEST.toString())) {
+            return null;
+        }
+        final String stored = in.readString();
+        if (!stored.equals(version)) {
+            return null;
+        }
+        final int maxHorizontalContext = in.readVInt();
+        final BytesRefHash words = readWords(in);
+        final FST<BytesRef> fst =
+                in.readByte() == 0 ? null : new FST<>(in, in, ByteSequenceOutputs.getSingleton());
+        CodecUtil.checkFooter(in);
+        return new SynonymMap(fst, words, maxHorizontalContext);
+    }
+
+    private static BytesRefHash readWords(DataInput in) throws IOException {
+        final int count = in.readVInt();
+        final BytesRefHash words = new BytesRefHash();
+        final BytesRef scratch = new BytesRef();
+        for (int ord = 0; ord < count; ord++) {
+            final int length = in.readVInt();
+            scratch.bytes = ArrayUtil.grow(scratch.bytes, length);
+            scratch.length = length;
+            in.readBytes(scratch.bytes, 0, length);
+            // ords are assigned in insertion order
+            words.add(scratch);
+        }
+        return words;
+    }
+
+    private void delete(String name) {
+        try {
+            directory.deleteFile(name);
+        } catch (IOException e) {
+            logger.debug("Could not delete synonym snapshot {}", name, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (directory != null) {
+            directory.close();
+        }
+    }
+
+    /**
+     * Name of the snapshot of a key, the ones of all the pinned versions of a map share the prefix
+     * of its unpinned key
+     */
+    static String fileName(SynonymMapCache.Key key) {
+        if (key.pinnedVersion() == null) {
+            return baseName(key) + EXTENSION;
+        }
+        return baseName(key) + "-" + sha256(key.pinnedVersion()) + EXTENSION;
+    }
+
+    private static String baseName(SynonymMapCache.Key key) {
+        return sha256(key.unpinned().toString());
+    }
+
+    private static String sha256(String value) {
+        final MessageDigest digest = MessageDigests.sha256();
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        return MessageDigests.toHexString(digest.digest());
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.io.IOException;
+import java.util.List;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+import org.opensearch.core.common.io.stream.Writeable;
+import org.opensearch.core.common.unit.ByteSizeValue;
+import org.opensearch.core.xcontent.ToXContentObject;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+/**
+ * Figures about a synonym map held by a node: what it was built from, how large it is, how long it
+ * took to obtain and whether the last attempt to load it failed.
+ *
+ * @param index the synonym index, qualified with its cluster if it is a remote one
+ * @param query the query selecting the synonym documents, null if all of them are used
+ * @param indices names of the indices using the map on the node
+ * @param ready whether the map has been obtained, queries are passed through unchanged until then
+ * @param restored whether the map was read from a snapshot or received from another node rather
+ *     than built
+ * @param rules number of rules the map was built from, -1 if it was restored
+ * @param lastReload epoch millis at which the current map was obtained, -1 if it never was
+ * @param lastError the last error met when loading the map, null if it then loaded fine
+ * @param overlayMappings number of mappings the rules added on top of the map since it was built
+ *     expand to
+ * @param expansionEntries number of expansions cached for the current map, -1 if they are not
+ * @param expansionHits number of token sequences whose expansion was found in the cache
+ * @param expansionMisses number of token sequences which had to be expanded
+ */
+public record SynonymMapStats(
+        String index,
+        String query,
+        boolean expand,
+        boolean lenient,
+        List<String> indices,
+        boolean ready,
+        String version,
+        boolean stale,
+        boolean restored,
+        long rules,
+        long lenientSkipped,
+        long fstBytes,
+        int words,
+        long wordBytes,
+        long loadMillis,
+        long buildMillis,
+        long lastReload,
+        long reloads,
+        String lastError,
+        int overlayMappings,
+        int expansionEntries,
+        long expansionHits,
+        long expansionMisses)
+        implements Writeable, ToXContentObject {
+
+    public SynonymMapStats(StreamInput in) throws IOException {
+        this(
+                in.readString(),
+                in.readOptionalString(),
+                in.readBoolean(),
+                in.readBoolean(),
+                in.readStringList(),
+                in.readBoolean(),
+                in.readOptionalString(),
+                in.readBoolean(),
+                in.readBoolean(),
+                in.readLong(),
+                in.readVLong(),
+                in.readVLong(),
+                in.readVInt(),
+                in.readVLong(),
+                in.readVLong(),
+                in.readVLong(),
+                in.readLong(),
+                in.readVLong(),
+                in.readOptionalString(),
+                in.readVInt(),
+                in.readInt(),
+                in.readVLong(),
+                in.readVLong());
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeString(index);
+        out.writeOptionalString(query);
+        out.writeBoolean(expand);
+        out.writeBoolean(lenient);
+        out.writeStringCollection(indices);
+        out.writeBoolean(ready);
+        out.writeOptionalString(version);
+        out.writeBoolean(stale);
+        out.writeBoolean(restored);
+        out.writeLong(rules);
+        out.writeVLong(lenientSkipped);
+        out.writeVLong(fstBytes);
+        out.writeVInt(words);
+        out.writeVLong(wordBytes);
+        out.writeVLong(loadMillis);
+        out.writeVLong(buildMillis);
+        out.writeLong(lastReload);
+        out.writeVLong(reloads);
+        out.writeOptionalString(lastError);
+        out.writeVInt(overlayMappings);
+        out.writeInt(expansionEntries);
+        out.writeVLong(expansionHits);
+        out.writeVLong(expansionMisses);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field("index", index);
+        if (query != null) {
+            builder.field("query", query);
+        }
+        builder.field("expand", expand);
+        builder.field("lenient", lenient);
+        builder.field("indices", indices);
+        builder.field("ready", ready);
+        builder.field("version", version);
+        builder.field("stale", stale);
+        builder.field("restored", restored);
+        if (rules >= 0) {
+            builder.field("rules", rules);
+        }
+        builder.field("lenient_skipped", lenientSkipped);
+        builder.humanReadableField("fst_size_in_bytes", "fst_size", new ByteSizeValue(fstBytes));
+        builder.field("words", words);
+        builder.humanReadableField(
+                "words_size_in_bytes", "words_size", new ByteSizeValue(wordBytes));
+        builder.humanReadableField(
+                "load_time_in_millis", "load_time", TimeValue.timeValueMillis(loadMillis));
+        builder.humanReadableField(
+                "build_time_in_millis", "build_time", TimeValue.timeValueMillis(buildMillis));
+        if (lastReload >= 0) {
+            builder.timeField("last_reload_in_millis", "last_reload", lastReload);
+        }
+        builder.field("reloads", reloads);
+        if (lastError != null) {
+            builder.field("last_error", lastError);
+        }
+        builder.field("overlay_mappings", overlayMappings);
+        if (expansionEntries >= 0) {
+            builder.startObject("expansion_cache");
+            builder.field("entries", expansionEntries);
+            builder.field("hits", expansionHits);
+            builder.field("misses", expansionMisses);
+            builder.endObject();
+        }
+        return builder.endObject();
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import org.apache.lucene.analysis.synonym.SynonymMap;
+
+/**
+ * Shares the synonym maps between the nodes of a cluster. A single node among the ones holding an
+ * index builds the map of a given key and the other ones receive it from that node rather than
+ * building it themselves.
+ */
+public interface SynonymMapTransfer {
+
+    /** Does not share anything, every node builds its own maps * */
+    SynonymMapTransfer NONE =
+            new SynonymMapTransfer() {
+                @Override
+                public boolean builds(SynonymMapCache.Key key, String holder) {
+                    return true;
+                }
+
+                @Override
+                public SynonymMap fetch(SynonymMapCache.Key key, String version) {
+                    return null;
+                }
+            };
+
+    /**
+     * Whether the map of the key is built by this node for the other ones holding the given index
+     */
+    boolean builds(SynonymMapCache.Key key, String holder);
+
+    /**
+     * Returns the map built by another node for the key from the given version of the synonym
+     * index, null if this node builds it or if it could not be obtained, in which case the map is
+     * built locally.
+     */
+    SynonymMap fetch(SynonymMapCache.Key key, String version);
+}
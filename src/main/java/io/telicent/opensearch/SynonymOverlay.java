@@ -0,0 +1,182 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import io.telicent.opensearch.IndexedSynonymParser.Mapping;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.CharsRefBuilder;
+import org.apache.lucene.util.fst.FST;
+import org.opensearch.common.cache.Cache;
+import org.opensearch.common.cache.CacheBuilder;
+
+/**
+ * Rules added to a synonym index since its map was built, which are applied on top of that map
+ * rather than rebuilding it. A query containing none of the words the added rules start with is
+ * expanded with the base map alone. Otherwise the entries of the base map which match parts of the
+ * query are combined with the added rules starting with its words into a map for that query only,
+ * so that the expansion is the same as with a map built from all the rules. The combined maps of
+ * the last queries are kept, so that a hot query does not build its map every time.
+ */
+public final class SynonymOverlay {
+
+    /** Number of distinct queries whose combined map is kept * */
+    static final int COMBINED_CACHE_SIZE = 256;
+
+    private final SynonymMap base;
+    private final boolean dedup;
+    private final List<Mapping> rules;
+    // the added rules by the first word of their input, in the order they were added
+    private final Map<String, List<Mapping>> byFirstWord = new HashMap<>();
+    private final Cache<List<String>, SynonymMap> combined =
+            CacheBuilder.<List<String>, SynonymMap>builder()
+                    .setMaximumWeight(COMBINED_CACHE_SIZE)
+                    .build();
+
+    SynonymOverlay(SynonymMap base, boolean dedup, List<Mapping> rules) {
+        this.base = base;
+        this.dedup = dedup;
+        this.rules = Collections.unmodifiableList(rules);
+        for (Mapping rule : rules) {
+            final String input = rule.input().toString();
+            final int separator = input.indexOf(SynonymMap.WORD_SEPARATOR);
+            byFirstWord
+                    .computeIfAbsent(
+                            separator < 0 ? input : input.substring(0, separator),
+                            word -> new ArrayList<>())
+                    .add(rule);
+        }
+    }
+
+    /** Returns an overlay holding the rules of this one followed by the given ones * */
+    SynonymOverlay plus(List<Mapping> added) {
+        final List<Mapping> all = new ArrayList<>(rules.size() + added.size());
+        all.addAll(rules);
+        all.addAll(added);
+        return new SynonymOverlay(base, dedup, all);
+    }
+
+    /** The map the rules are added to * */
+    SynonymMap base() {
+        return base;
+    }
+
+    /** Number of mappings added to the base map, a rule expanding to one or more * */
+    public int size() {
+        return rules.size();
+    }
+
+    /** Whether any of the added rules may match the terms of a query * */
+    boolean touches(List<String> terms) {
+        for (String term : terms) {
+            if (byFirstWord.containsKey(term)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the map expanding the given sequence of terms as the base map with the added rules
+     * would, building it unless it was for the same terms lately.
+     */
+    SynonymMap combine(List<String> terms) throws IOException {
+        final SynonymMap cached = combined.get(terms);
+        if (cached != null) {
+            return cached;
+        }
+        // the caller reuses its list
+        final List<String> key = List.copyOf(terms);
+        final SynonymMap built = build(key);
+        combined.put(key, built);
+        return built;
+    }
+
+    /**
+     * Builds the map expanding the given sequence of terms. Only the entries of the base map whose
+     * input is a sequence of these terms and the added rules starting with one of them can match
+     * them and are carried over.
+     */
+    private SynonymMap build(List<String> terms) throws IOException {
+        final SynonymMap.Builder builder = new SynonymMap.Builder(dedup);
+        final FST<BytesRef> fst = base.fst;
+        if (fst != null) {
+            final FST.BytesReader reader = fst.getBytesReader();
+            final FST.Arc<BytesRef> arc = new FST.Arc<>();
+            final CharsRefBuilder input = new CharsRefBuilder();
+            for (int start = 0; start < terms.size(); start++) {
+                fst.getFirstArc(arc);
+                BytesRef output = fst.outputs.getNoOutput();
+                input.clear();
+                // follows the FST the way the synonym filter does
+                matching:
+                for (int end = start;
+                        end < terms.size() && end - start < base.maxHorizontalContext;
+                        end++) {
+                    if (end > start) {
+                        if (fst.findTargetArc(SynonymMap.WORD_SEPARATOR, arc, arc, reader)
+                                == null) {
+                            break;
+                        }
+                        output = fst.outputs.add(output, arc.output());
+                        input.append(SynonymMap.WORD_SEPARATOR);
+                    }
+                    final String term = terms.get(end);
+                    for (int i = 0; i < term.length(); ) {
+                        final int codePoint = term.codePointAt(i);
+                        if (fst.findTargetArc(codePoint, arc, arc, reader) == null) {
+                            break matching;
+                        }
+                        output = fst.outputs.add(output, arc.output());
+                        i += Character.charCount(codePoint);
+                    }
+                    input.append(term);
+                    if (arc.isFinal()) {
+                        addEntry(
+                                builder,
+                                input.toCharsRef(),
+                                fst.outputs.add(output, arc.nextFinalOutput()));
+                    }
+                }
+            }
+        }
+        // each list of rules once, even if its first word is repeated
+        for (String word : new LinkedHashSet<>(terms)) {
+            final List<Mapping> starting = byFirstWord.get(word);
+            if (starting != null) {
+                for (Mapping rule : starting) {
+                    builder.add(rule.input(), rule.output(), rule.includeOrig());
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /** Decodes an entry of the base map, in the format the synonym filter reads it * */
+    private void addEntry(SynonymMap.Builder builder, CharsRef input, BytesRef bytes) {
+        final ByteArrayDataInput in =
+                new ByteArrayDataInput(bytes.bytes, bytes.offset, bytes.length);
+        final int code = in.readVInt();
+        final boolean includeOrig = (code & 1) == 0;
+        final int count = code >>> 1;
+        final BytesRef word = new BytesRef();
+        for (int i = 0; i < count; i++) {
+            base.words.get(in.readVInt(), word);
+            builder.add(input, new CharsRef(word.utf8ToString()), includeOrig);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import org.opensearch.action.ActionType;
+
+/** Builds the synonym map of a filter without installing it, to check its rules * */
+public class SynonymsCompileAction extends ActionType<SynonymsCompileResponse> {
+
+    public static final SynonymsCompileAction INSTANCE = new SynonymsCompileAction();
+    public static final String NAME = "indices:admin/synonyms/compile";
+
+    private SynonymsCompileAction() {
+        super(NAME, SynonymsCompileResponse::new);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import static org.opensearch.action.ValidateActions.addValidationError;
+
+import java.io.IOException;
+import java.util.List;
+import org.opensearch.action.ActionRequestValidationException;
+import org.opensearch.action.support.single.shard.SingleShardRequest;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+
+/**
+ * Asks for the synonym filter of an analyzer of an index to be compiled, either from its synonym
+ * index or from the rules given. The filter can be left out if the analyzer has a single one.
+ */
+public class SynonymsCompileRequest extends SingleShardRequest<SynonymsCompileRequest> {
+
+    private final String analyzer;
+    private final String filter;
+    // compiled instead of the content of the synonym index when set
+    private final List<String> rules;
+
+    public SynonymsCompileRequest(
+            String index, String analyzer, String filter, List<String> rules) {
+        super(index);
+        this.analyzer = analyzer;
+        this.filter = filter;
+        this.rules = rules;
+    }
+
+    public SynonymsCompileRequest(StreamInput in) throws IOException {
+        super(in);
+        this.analyzer = in.readOptionalString();
+        this.filter = in.readOptionalString();
+        this.rules = in.readBoolean() ? in.readStringList() : null;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeOptionalString(analyzer);
+        out.writeOptionalString(filter);
+        out.writeBoolean(rules != null);
+        if (rules != null) {
+            out.writeStringCollection(rules);
+        }
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        ActionRequestValidationException validationException = validateNonNullIndex();
+        if (analyzer == null) {
+            validationException = addValidationError("analyzer is missing", validationException);
+        }
+        return validationException;
+    }
+
+    public String analyzer() {
+        return analyzer;
+    }
+
+    public String filter() {
+        return filter;
+    }
+
+    public List<String> rules() {
+        return rules;
+    }
+}
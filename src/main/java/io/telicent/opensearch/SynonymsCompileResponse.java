@@ -0,0 +1,143 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.io.IOException;
+import java.util.List;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.core.action.ActionResponse;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+import org.opensearch.core.common.unit.ByteSizeValue;
+import org.opensearch.core.xcontent.ToXContentObject;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+/**
+ * Outcome of compiling the synonyms of a filter: the rules which could not be parsed, the size of
+ * the resulting map and how long it took to build. The map itself is thrown away.
+ */
+public class SynonymsCompileResponse extends ActionResponse implements ToXContentObject {
+
+    private final String filter;
+    // the synonym index, null if the rules were given in the request
+    private final String source;
+    private final int rules;
+    private final int invalidCount;
+    private final List<IndexedSynonymParser.InvalidRule> invalidRules;
+    private final long lenientSkipped;
+    private final long fstBytes;
+    private final int words;
+    private final long wordBytes;
+    private final long loadMillis;
+    private final long buildMillis;
+
+    public SynonymsCompileResponse(
+            String filter,
+            String source,
+            int rules,
+            int invalidCount,
+            List<IndexedSynonymParser.InvalidRule> invalidRules,
+            long lenientSkipped,
+            long fstBytes,
+            int words,
+            long wordBytes,
+            long loadMillis,
+            long buildMillis) {
+        this.filter = filter;
+        this.source = source;
+        this.rules = rules;
+        this.invalidCount = invalidCount;
+        this.invalidRules = invalidRules;
+        this.lenientSkipped = lenientSkipped;
+        this.fstBytes = fstBytes;
+        this.words = words;
+        this.wordBytes = wordBytes;
+        this.loadMillis = loadMillis;
+        this.buildMillis = buildMillis;
+    }
+
+    public SynonymsCompileResponse(StreamInput in) throws IOException {
+        super(in);
+        this.filter = in.readString();
+        this.source = in.readOptionalString();
+        this.rules = in.readVInt();
+        this.invalidCount = in.readVInt();
+        this.invalidRules =
+                in.readList(
+                        i -> new IndexedSynonymParser.InvalidRule(i.readString(), i.readString()));
+        this.lenientSkipped = in.readVLong();
+        this.fstBytes = in.readVLong();
+        this.words = in.readVInt();
+        this.wordBytes = in.readVLong();
+        this.loadMillis = in.readVLong();
+        this.buildMillis = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeString(filter);
+        out.writeOptionalString(source);
+        out.writeVInt(rules);
+        out.writeVInt(invalidCount);
+        out.writeCollection(
+                invalidRules,
+                (o, invalid) -> {
+                    o.writeString(invalid.rule());
+                    o.writeString(invalid.reason());
+                });
+        out.writeVLong(lenientSkipped);
+        out.writeVLong(fstBytes);
+        out.writeVInt(words);
+        out.writeVLong(wordBytes);
+        out.writeVLong(loadMillis);
+        out.writeVLong(buildMillis);
+    }
+
+    /** Whether all the rules could be parsed * */
+    public boolean valid() {
+        return invalidCount == 0;
+    }
+
+    public int invalidCount() {
+        return invalidCount;
+    }
+
+    public List<IndexedSynonymParser.InvalidRule> invalidRules() {
+        return invalidRules;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field("filter", filter);
+        if (source != null) {
+            builder.field("index", source);
+        }
+        builder.field("valid", valid());
+        builder.field("rules", rules);
+        builder.field("invalid_count", invalidCount);
+        builder.startArray("invalid_rules");
+        for (IndexedSynonymParser.InvalidRule invalid : invalidRules) {
+            builder.startObject();
+            builder.field("rule", invalid.rule());
+            builder.field("reason", invalid.reason());
+            builder.endObject();
+        }
+        builder.endArray();
+        builder.field("lenient_skipped", lenientSkipped);
+        builder.humanReadableField("fst_size_in_bytes", "fst_size", new ByteSizeValue(fstBytes));
+        builder.field("words", words);
+        builder.humanReadableField(
+                "words_size_in_bytes", "words_size", new ByteSizeValue(wordBytes));
+        builder.humanReadableField(
+                "load_time_in_millis", "load_time", TimeValue.timeValueMillis(loadMillis));
+        builder.humanReadableField(
+                "build_time_in_millis", "build_time", TimeValue.timeValueMillis(buildMillis));
+        return builder.endObject();
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.util.List;
+
+/** Reads the synonym rules stored in an index * */
+public interface SynonymsLoader {
+
+    /** Receives the rules found in a page of documents * */
+    @FunctionalInterface
+    interface PageConsumer {
+        void accept(List<String> rules) throws Exception;
+    }
+
+    /**
+     * Returns the version of the documents of the index matching the query, which changes whenever
+     * such documents are added, updated or deleted, or null if the index does not exist. The query
+     * is in the JSON query DSL, all the documents are considered if it is null. The version is made
+     * of the number of documents and of their highest sequence number on each shard of the index,
+     * see {@link SynonymsVersion}, which allows telling documents being added from other changes.
+     */
+    String version(String index, String query) throws Exception;
+
+    /**
+     * Streams the rules contained in the documents of an index matching the query, or in all of
+     * them if the query is null, one page of documents at a time. Only the given fields are
+     * fetched, they can be paths to nested fields and contain wildcards. Every value of these
+     * fields is a rule, or each element if the value is an array. If no field is given, the rules
+     * are the values of all the top level fields of the documents.
+     *
+     * @return false if the index does not exist
+     */
+    boolean load(String index, String query, String[] fields, int pageSize, PageConsumer consumer)
+            throws Exception;
+}
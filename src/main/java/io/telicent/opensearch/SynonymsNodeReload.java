@@ -0,0 +1,48 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.io.IOException;
+import org.opensearch.action.support.nodes.BaseNodeResponse;
+import org.opensearch.cluster.node.DiscoveryNode;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+import org.opensearch.core.xcontent.ToXContentFragment;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+/** Number of synonym maps a node has rebuilt on a reload * */
+public class SynonymsNodeReload extends BaseNodeResponse implements ToXContentFragment {
+
+    private final int reloaded;
+
+    public SynonymsNodeReload(DiscoveryNode node, int reloaded) {
+        super(node);
+        this.reloaded = reloaded;
+    }
+
+    public SynonymsNodeReload(StreamInput in) throws IOException {
+        super(in);
+        this.reloaded = in.readVInt();
+    }
+
+    public int reloaded() {
+        return reloaded;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(reloaded);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field("name", getNode().getName());
+        return builder.field("reloaded", reloaded);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.opensearch.action.support.nodes.BaseNodeResponse;
+import org.opensearch.cluster.node.DiscoveryNode;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+import org.opensearch.core.common.unit.ByteSizeValue;
+import org.opensearch.core.xcontent.ToXContentFragment;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+/**
+ * Figures about the synonym maps held by a node, along with the state of the circuit breaker
+ * accounting for their memory
+ */
+public class SynonymsNodeStats extends BaseNodeResponse implements ToXContentFragment {
+
+    private final List<SynonymMapStats> maps;
+    private final long breakerLimit;
+    private final long breakerUsed;
+    private final long breakerTripped;
+
+    public SynonymsNodeStats(
+            DiscoveryNode node,
+            List<SynonymMapStats> maps,
+            long breakerLimit,
+            long breakerUsed,
+            long breakerTripped) {
+        super(node);
+        this.maps = maps;
+        this.breakerLimit = breakerLimit;
+        this.breakerUsed = breakerUsed;
+        this.breakerTripped = breakerTripped;
+    }
+
+    public SynonymsNodeStats(StreamInput in) throws IOException {
+        super(in);
+        this.maps = in.readList(SynonymMapStats::new);
+        this.breakerLimit = in.readLong();
+        this.breakerUsed = in.readLong();
+        this.breakerTripped = in.readVLong();
+    }
+
+    public List<SynonymMapStats> maps() {
+        return maps;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeList(maps);
+        out.writeLong(breakerLimit);
+        out.writeLong(breakerUsed);
+        out.writeVLong(breakerTripped);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field("name", getNode().getName());
+        long fstBytes = 0;
+        long wordBytes = 0;
+        for (SynonymMapStats map : maps) {
+            fstBytes += map.fstBytes();
+            wordBytes += map.wordBytes();
+        }
+        builder.field("count", maps.size());
+        builder.field("size_in_bytes", fstBytes + wordBytes);
+        // includes the maps being built
+        builder.startObject("breaker");
+        builder.humanReadableField(
+                "limit_size_in_bytes", "limit_size", new ByteSizeValue(breakerLimit));
+        builder.humanReadableField(
+                "estimated_size_in_bytes", "estimated_size", new ByteSizeValue(breakerUsed));
+        builder.field("tripped", breakerTripped);
+        builder.endObject();
+        // an index is ready once all the maps it uses are
+        final Map<String, Boolean> ready = new TreeMap<>();
+        for (SynonymMapStats map : maps) {
+            for (String index : map.indices()) {
+                ready.merge(index, map.ready(), Boolean::logicalAnd);
+            }
+        }
+        builder.startObject("indices");
+        for (Map.Entry<String, Boolean> index : ready.entrySet()) {
+            builder.startObject(index.getKey()).field("ready", index.getValue()).endObject();
+        }
+        builder.endObject();
+        builder.startArray("maps");
+        for (SynonymMapStats map : maps) {
+            map.toXContent(builder, params);
+        }
+        return builder.endArray();
+    }
+}
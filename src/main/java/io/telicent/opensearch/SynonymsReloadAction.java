@@ -0,0 +1,21 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import org.opensearch.action.ActionType;
+
+/** Rebuilds the synonym maps whose synonym index has changed on the nodes of the cluster * */
+public class SynonymsReloadAction extends ActionType<SynonymsReloadResponse> {
+
+    public static final SynonymsReloadAction INSTANCE = new SynonymsReloadAction();
+    public static final String NAME = "cluster:admin/synonyms/reload";
+
+    private SynonymsReloadAction() {
+        super(NAME, SynonymsReloadResponse::new);
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.io.IOException;
+import org.opensearch.action.support.nodes.BaseNodesRequest;
+import org.opensearch.core.common.io.stream.StreamInput;
+
+/** Asks the given nodes, all of them if none is given, to reload their synonym maps * */
+public class SynonymsReloadRequest extends BaseNodesRequest<SynonymsReloadRequest> {
+
+    public SynonymsReloadRequest(String... nodesIds) {
+        super(nodesIds);
+    }
+
+    public SynonymsReloadRequest(StreamInput in) throws IOException {
+        super(in);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.io.IOException;
+import java.util.List;
+import org.opensearch.action.FailedNodeException;
+import org.opensearch.action.support.nodes.BaseNodesResponse;
+import org.opensearch.cluster.ClusterName;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+import org.opensearch.core.xcontent.ToXContentFragment;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+/** Number of synonym maps rebuilt by each of the nodes which were asked * */
+public class SynonymsReloadResponse extends BaseNodesResponse<SynonymsNodeReload>
+        implements ToXContentFragment {
+
+    public SynonymsReloadResponse(StreamInput in) throws IOException {
+        super(in);
+    }
+
+    public SynonymsReloadResponse(
+            ClusterName clusterName,
+            List<SynonymsNodeReload> nodes,
+            List<FailedNodeException> failures) {
+        super(clusterName, nodes, failures);
+    }
+
+    @Override
+    protected List<SynonymsNodeReload> readNodesFrom(StreamInput in) throws IOException {
+        return in.readList(SynonymsNodeReload::new);
+    }
+
+    @Override
+    protected void writeNodesTo(StreamOutput out, List<SynonymsNodeReload> nodes)
+            throws IOException {
+        out.writeList(nodes);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("nodes");
+        for (SynonymsNodeReload node : getNodes()) {
+            builder.startObject(node.getNode().getId());
+            node.toXContent(builder, params);
+            builder.endObject();
+        }
+        return builder.endObject();
+    }
+}
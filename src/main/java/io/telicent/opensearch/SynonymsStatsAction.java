@@ -0,0 +1,21 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import org.opensearch.action.ActionType;
+
+/** Collects the figures about the synonym maps held by the nodes of the cluster * */
+public class SynonymsStatsAction extends ActionType<SynonymsStatsResponse> {
+
+    public static final SynonymsStatsAction INSTANCE = new SynonymsStatsAction();
+    public static final String NAME = "cluster:monitor/synonyms/stats";
+
+    private SynonymsStatsAction() {
+        super(NAME, SynonymsStatsResponse::new);
+    }
+}
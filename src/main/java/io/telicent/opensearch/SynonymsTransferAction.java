@@ -0,0 +1,21 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import org.opensearch.action.ActionType;
+
+/** Fetches a synonym map from the node building it, sent between nodes only * */
+public class SynonymsTransferAction extends ActionType<SynonymsTransferResponse> {
+
+    public static final SynonymsTransferAction INSTANCE = new SynonymsTransferAction();
+    public static final String NAME = "internal:synonyms/transfer";
+
+    private SynonymsTransferAction() {
+        super(NAME, SynonymsTransferResponse::new);
+    }
+}
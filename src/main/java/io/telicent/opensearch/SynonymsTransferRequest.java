@@ -0,0 +1,85 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.io.IOException;
+import org.opensearch.action.support.nodes.BaseNodesRequest;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+
+/**
+ * Asks the node building a synonym map for the nodes holding an index for the map built from a
+ * version of its synonym index
+ */
+public class SynonymsTransferRequest extends BaseNodesRequest<SynonymsTransferRequest> {
+
+    private final SynonymMapCache.Key key;
+    private final String holder;
+    private final String version;
+
+    public SynonymsTransferRequest(
+            String nodeId, SynonymMapCache.Key key, String holder, String version) {
+        super(nodeId);
+        this.key = key;
+        this.holder = holder;
+        this.version = version;
+    }
+
+    public SynonymsTransferRequest(StreamInput in) throws IOException {
+        super(in);
+        this.key = readKey(in);
+        this.holder = in.readString();
+        this.version = in.readString();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        writeKey(out, key);
+        out.writeString(holder);
+        out.writeString(version);
+    }
+
+    public SynonymMapCache.Key key() {
+        return key;
+    }
+
+    /** The index using the map, among whose nodes the building one was picked * */
+    public String holder() {
+        return holder;
+    }
+
+    public String version() {
+        return version;
+    }
+
+    static SynonymMapCache.Key readKey(StreamInput in) throws IOException {
+        return new SynonymMapCache.Key(
+                in.readString(),
+                in.readOptionalString(),
+                in.readStringList(),
+                in.readOptionalString(),
+                in.readBoolean(),
+                in.readBoolean(),
+                in.readBoolean(),
+                in.readString(),
+                in.readOptionalString());
+    }
+
+    static void writeKey(StreamOutput out, SynonymMapCache.Key key) throws IOException {
+        out.writeString(key.index());
+        out.writeOptionalString(key.credentials());
+        out.writeStringCollection(key.fields());
+        out.writeOptionalString(key.query());
+        out.writeBoolean(key.expand());
+        out.writeBoolean(key.lenient());
+        out.writeBoolean(key.dedup());
+        out.writeString(key.chainFingerprint());
+        out.writeOptionalString(key.pinnedVersion());
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.io.IOException;
+import java.util.List;
+import org.opensearch.action.FailedNodeException;
+import org.opensearch.action.support.nodes.BaseNodeResponse;
+import org.opensearch.action.support.nodes.BaseNodesResponse;
+import org.opensearch.cluster.ClusterName;
+import org.opensearch.cluster.node.DiscoveryNode;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+
+/** The synonym map sent by the node building it, if it had the version asked for * */
+public class SynonymsTransferResponse
+        extends BaseNodesResponse<SynonymsTransferResponse.NodeResponse> {
+
+    public SynonymsTransferResponse(StreamInput in) throws IOException {
+        super(in);
+    }
+
+    public SynonymsTransferResponse(
+            ClusterName clusterName, List<NodeResponse> nodes, List<FailedNodeException> failures) {
+        super(clusterName, nodes, failures);
+    }
+
+    @Override
+    protected List<NodeResponse> readNodesFrom(StreamInput in) throws IOException {
+        return in.readList(NodeResponse::new);
+    }
+
+    @Override
+    protected void writeNodesTo(StreamOutput out, List<NodeResponse> nodes) throws IOException {
+        out.writeList(nodes);
+    }
+
+    /** The map serialized with its version and checksum, see {@link SynonymMapSnapshots} * */
+    public static class NodeResponse extends BaseNodeResponse {
+
+        // null if the node could not send the map
+        private final byte[] map;
+
+        public NodeResponse(DiscoveryNode node, byte[] map) {
+            super(node);
+            this.map = map;
+        }
+
+        public NodeResponse(StreamInput in) throws IOException {
+            super(in);
+            this.map = in.readBoolean() ? in.readByteArray() : null;
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeBoolean(map != null);
+            if (map != null) {
+                out.writeByteArray(map);
+            }
+        }
+
+        public byte[] map() {
+            return map;
+        }
+    }
+}
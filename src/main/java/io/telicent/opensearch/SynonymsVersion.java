@@ -0,0 +1,95 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Version of the synonym documents of an index, as returned by {@link
+ * SynonymsLoader#version(String, String)}. Sequence numbers are only ordered within a shard, so the
+ * version is made of the number of matching documents on each shard, of their highest sequence
+ * number and of the primary term of the document holding it. The shards are identified by the UUID
+ * of their index, which tells an index deleted and created again apart from the previous one.
+ */
+public final class SynonymsVersion {
+
+    /** The documents of a shard matching the query * */
+    public record Shard(String uuid, int shard, long count, long maxSeqNo, long primaryTerm) {
+
+        @Override
+        public String toString() {
+            return uuid + "/" + shard + ":" + count + ":" + maxSeqNo + ":" + primaryTerm;
+        }
+    }
+
+    private static final Pattern SHARD =
+            Pattern.compile("([A-Za-z0-9_-]+)/(\\d+):(\\d+):(-?\\d+):(\\d+)");
+
+    private SynonymsVersion() {}
+
+    /** Formats the shards of the synonym indices, in a stable order * */
+    public static String format(List<Shard> shards) {
+        final List<Shard> sorted = new ArrayList<>(shards);
+        sorted.sort(Comparator.comparing(Shard::uuid).thenComparingInt(Shard::shard));
+        final StringBuilder version = new StringBuilder();
+        for (Shard shard : sorted) {
+            if (version.length() > 0) {
+                version.append(',');
+            }
+            version.append(shard);
+        }
+        return version.toString();
+    }
+
+    /**
+     * Reads the shards of a version
+     *
+     * @return null if the version is not in that format
+     */
+    public static List<Shard> parse(String version) {
+        if (version == null) {
+            return null;
+        }
+        if (version.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<Shard> shards = new ArrayList<>();
+        for (String part : version.split(",")) {
+            final Matcher matcher = SHARD.matcher(part);
+            if (!matcher.matches()) {
+                return null;
+            }
+            shards.add(
+                    new Shard(
+                            matcher.group(1),
+                            Integer.parseInt(matcher.group(2)),
+                            Long.parseLong(matcher.group(3)),
+                            Long.parseLong(matcher.group(4)),
+                            Long.parseLong(matcher.group(5))));
+        }
+        return shards;
+    }
+
+    /** Total number of documents of a version, -1 if it is not in that format * */
+    public static long count(String version) {
+        final List<Shard> shards = parse(version);
+        if (shards == null) {
+            return -1;
+        }
+        long count = 0;
+        for (Shard shard : shards) {
+            count += shard.count();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.io.IOException;
+import org.apache.lucene.analysis.Analyzer;
+import org.opensearch.action.support.ActionFilters;
+import org.opensearch.action.support.single.shard.TransportSingleShardAction;
+import org.opensearch.cluster.ClusterState;
+import org.opensearch.cluster.block.ClusterBlockException;
+import org.opensearch.cluster.block.ClusterBlockLevel;
+import org.opensearch.cluster.metadata.IndexNameExpressionResolver;
+import org.opensearch.cluster.routing.ShardsIterator;
+import org.opensearch.cluster.service.ClusterService;
+import org.opensearch.common.inject.Inject;
+import org.opensearch.core.common.io.stream.Writeable;
+import org.opensearch.core.index.shard.ShardId;
+import org.opensearch.index.analysis.AnalyzerComponentsProvider;
+import org.opensearch.index.analysis.NamedAnalyzer;
+import org.opensearch.index.analysis.TokenFilterFactory;
+import org.opensearch.indices.IndicesService;
+import org.opensearch.threadpool.ThreadPool;
+import org.opensearch.transport.TransportService;
+
+/**
+ * Compiles the synonyms of a filter on a node holding a shard of the index, since the analysis
+ * chain the rules go through is only available there.
+ */
+public class TransportSynonymsCompileAction
+        extends TransportSingleShardAction<SynonymsCompileRequest, SynonymsCompileResponse> {
+
+    private final IndicesService indicesService;
+
+    @Inject
+    public TransportSynonymsCompileAction(
+            ThreadPool threadPool,
+            ClusterService clusterService,
+            TransportService transportService,
+            IndicesService indicesService,
+            ActionFilters actionFilters,
+            IndexNameExpressionResolver indexNameExpressionResolver) {
+        super(
+                SynonymsCompileAction.NAME,
+                threadPool,
+                clusterService,
+                transportService,
+                actionFilters,
+                indexNameExpressionResolver,
+                SynonymsCompileRequest::new,
+                IndexedSynonymsPlugin.LOAD_THREAD_POOL);
+        this.indicesService = indicesService;
+    }
+
+    @Override
+    protected SynonymsCompileResponse shardOperation(
+            SynonymsCompileRequest request, ShardId shardId) throws IOException {
+        final NamedAnalyzer named =
+                indicesService
+                        .indexServiceSafe(shardId.getIndex())
+                        .getIndexAnalyzers()
+                        .get(request.analyzer());
+        if (named == null) {
+            throw new IllegalArgumentException(
+                    "no analyzer ["
+                            + request.analyzer()
+                            + "] in index ["
+                            + shardId.getIndexName()
+                            + "]");
+        }
+        final Analyzer analyzer = named.analyzer();
+        if (analyzer instanceof AnalyzerComponentsProvider provider) {
+            for (TokenFilterFactory filter : provider.getComponents().getTokenFilters()) {
+                if (filter instanceof SynonymGraphTokenFilterFactory.ChainAwareFactory synonyms
+                        && (request.filter() == null || request.filter().equals(filter.name()))) {
+                    try {
+                        return synonyms.compile(request.rules());
+                    } catch (IOException | RuntimeException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new IOException("failed to compile synonyms", e);
+                    }
+                }
+            }
+        }
+        throw new IllegalArgumentException(
+                "analyzer ["
+                        + request.analyzer()
+                        + "] has no synonym filter"
+                        + (request.filter() == null ? "" : " [" + request.filter() + "]"));
+    }
+
+    @Override
+    protected Writeable.Reader<SynonymsCompileResponse> getResponseReader() {
+        return SynonymsCompileResponse::new;
+    }
+
+    @Override
+    protected boolean resolveIndex(SynonymsCompileRequest request) {
+        return true;
+    }
+
+    @Override
+    protected ClusterBlockException checkRequestBlock(ClusterState state, InternalRequest request) {
+        return state.blocks()
+                .indexBlockedException(ClusterBlockLevel.READ, request.concreteIndex());
+    }
+
+    @Override
+    protected ShardsIterator shards(ClusterState state, InternalRequest request) {
+        return state.routingTable().index(request.concreteIndex()).randomAllActiveShardsIt();
+    }
+}
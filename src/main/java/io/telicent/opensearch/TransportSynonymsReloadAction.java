@@ -0,0 +1,98 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.io.IOException;
+import java.util.List;
+import org.opensearch.action.FailedNodeException;
+import org.opensearch.action.support.ActionFilters;
+import org.opensearch.action.support.nodes.BaseNodeRequest;
+import org.opensearch.action.support.nodes.TransportNodesAction;
+import org.opensearch.cluster.service.ClusterService;
+import org.opensearch.common.inject.Inject;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.threadpool.ThreadPool;
+import org.opensearch.transport.TransportService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rebuilds the maps of the node-wide cache of each node whose synonym index has changed, on the
+ * thread pool loading the maps. The analyzers pick them up on their next use.
+ */
+public class TransportSynonymsReloadAction
+        extends TransportNodesAction<
+                SynonymsReloadRequest,
+                SynonymsReloadResponse,
+                TransportSynonymsReloadAction.NodeRequest,
+                SynonymsNodeReload> {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(TransportSynonymsReloadAction.class);
+
+    private final SynonymMapCache synonymMapCache;
+
+    @Inject
+    public TransportSynonymsReloadAction(
+            ThreadPool threadPool,
+            ClusterService clusterService,
+            TransportService transportService,
+            ActionFilters actionFilters,
+            SynonymMapCache synonymMapCache) {
+        super(
+                SynonymsReloadAction.NAME,
+                threadPool,
+                clusterService,
+                transportService,
+                actionFilters,
+                SynonymsReloadRequest::new,
+                NodeRequest::new,
+                IndexedSynonymsPlugin.LOAD_THREAD_POOL,
+                SynonymsNodeReload.class);
+        this.synonymMapCache = synonymMapCache;
+    }
+
+    @Override
+    protected SynonymsReloadResponse newResponse(
+            SynonymsReloadRequest request,
+            List<SynonymsNodeReload> nodes,
+            List<FailedNodeException> failures) {
+        return new SynonymsReloadResponse(clusterService.getClusterName(), nodes, failures);
+    }
+
+    @Override
+    protected NodeRequest newNodeRequest(SynonymsReloadRequest request) {
+        return new NodeRequest();
+    }
+
+    @Override
+    protected SynonymsNodeReload newNodeResponse(StreamInput in) throws IOException {
+        return new SynonymsNodeReload(in);
+    }
+
+    @Override
+    protected SynonymsNodeReload nodeOperation(NodeRequest request) {
+        final int reloaded =
+                synonymMapCache.reloadAll(
+                        threadPool.executor(IndexedSynonymsPlugin.LOAD_THREAD_POOL));
+        logger.info("{} synonym maps reloaded", reloaded);
+        return new SynonymsNodeReload(clusterService.localNode(), reloaded);
+    }
+
+    /** Asks a single node to reload its maps * */
+    // the nodes action of this version of OpenSearch still requires the deprecated base
+    @SuppressWarnings("deprecation")
+    public static class NodeRequest extends BaseNodeRequest {
+
+        public NodeRequest() {}
+
+        public NodeRequest(StreamInput in) throws IOException {
+            super(in);
+        }
+    }
+}
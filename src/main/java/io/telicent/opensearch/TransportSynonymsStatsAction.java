@@ -0,0 +1,93 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.io.IOException;
+import java.util.List;
+import org.opensearch.action.FailedNodeException;
+import org.opensearch.action.support.ActionFilters;
+import org.opensearch.action.support.nodes.BaseNodeRequest;
+import org.opensearch.action.support.nodes.TransportNodesAction;
+import org.opensearch.cluster.service.ClusterService;
+import org.opensearch.common.inject.Inject;
+import org.opensearch.core.common.breaker.CircuitBreaker;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.threadpool.ThreadPool;
+import org.opensearch.transport.TransportService;
+
+/** Reads the figures about the synonym maps from the node-wide cache of each node * */
+public class TransportSynonymsStatsAction
+        extends TransportNodesAction<
+                SynonymsStatsRequest,
+                SynonymsStatsResponse,
+                TransportSynonymsStatsAction.NodeRequest,
+                SynonymsNodeStats> {
+
+    private final SynonymMapCache synonymMapCache;
+
+    @Inject
+    public TransportSynonymsStatsAction(
+            ThreadPool threadPool,
+            ClusterService clusterService,
+            TransportService transportService,
+            ActionFilters actionFilters,
+            SynonymMapCache synonymMapCache) {
+        super(
+                SynonymsStatsAction.NAME,
+                threadPool,
+                clusterService,
+                transportService,
+                actionFilters,
+                SynonymsStatsRequest::new,
+                NodeRequest::new,
+                ThreadPool.Names.MANAGEMENT,
+                SynonymsNodeStats.class);
+        this.synonymMapCache = synonymMapCache;
+    }
+
+    @Override
+    protected SynonymsStatsResponse newResponse(
+            SynonymsStatsRequest request,
+            List<SynonymsNodeStats> nodes,
+            List<FailedNodeException> failures) {
+        return new SynonymsStatsResponse(clusterService.getClusterName(), nodes, failures);
+    }
+
+    @Override
+    protected NodeRequest newNodeRequest(SynonymsStatsRequest request) {
+        return new NodeRequest();
+    }
+
+    @Override
+    protected SynonymsNodeStats newNodeResponse(StreamInput in) throws IOException {
+        return new SynonymsNodeStats(in);
+    }
+
+    @Override
+    protected SynonymsNodeStats nodeOperation(NodeRequest request) {
+        final CircuitBreaker breaker = synonymMapCache.breaker();
+        return new SynonymsNodeStats(
+                clusterService.localNode(),
+                synonymMapCache.stats(),
+                breaker.getLimit(),
+                breaker.getUsed(),
+                breaker.getTrippedCount());
+    }
+
+    /** Asks a single node for its figures * */
+    // the nodes action of this version of OpenSearch still requires the deprecated base
+    @SuppressWarnings("deprecation")
+    public static class NodeRequest extends BaseNodeRequest {
+
+        public NodeRequest() {}
+
+        public NodeRequest(StreamInput in) throws IOException {
+            super(in);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.io.IOException;
+import java.util.List;
+import org.opensearch.OpenSearchException;
+import org.opensearch.action.FailedNodeException;
+import org.opensearch.action.support.ActionFilters;
+import org.opensearch.action.support.nodes.BaseNodeRequest;
+import org.opensearch.action.support.nodes.TransportNodesAction;
+import org.opensearch.cluster.service.ClusterService;
+import org.opensearch.common.inject.Inject;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+import org.opensearch.threadpool.ThreadPool;
+import org.opensearch.transport.TransportService;
+
+/**
+ * Sends the synonym maps this node builds to the other nodes, rebuilding them first if they are
+ * behind the version asked for.
+ */
+public class TransportSynonymsTransferAction
+        extends TransportNodesAction<
+                SynonymsTransferRequest,
+                SynonymsTransferResponse,
+                TransportSynonymsTransferAction.NodeRequest,
+                SynonymsTransferResponse.NodeResponse> {
+
+    private final SynonymMapCache synonymMapCache;
+
+    @Inject
+    public TransportSynonymsTransferAction(
+            ThreadPool threadPool,
+            ClusterService clusterService,
+            TransportService transportService,
+            ActionFilters actionFilters,
+            SynonymMapCache synonymMapCache) {
+        super(
+                SynonymsTransferAction.NAME,
+                threadPool,
+                clusterService,
+                transportService,
+                actionFilters,
+                SynonymsTransferRequest::new,
+                NodeRequest::new,
+                // not behind the loads of this node, which may be waiting for other nodes
+                ThreadPool.Names.GENERIC,
+                SynonymsTransferResponse.NodeResponse.class);
+        this.synonymMapCache = synonymMapCache;
+    }
+
+    @Override
+    protected SynonymsTransferResponse newResponse(
+            SynonymsTransferRequest request,
+            List<SynonymsTransferResponse.NodeResponse> nodes,
+            List<FailedNodeException> failures) {
+        return new SynonymsTransferResponse(clusterService.getClusterName(), nodes, failures);
+    }
+
+    @Override
+    protected NodeRequest newNodeRequest(SynonymsTransferRequest request) {
+        return new NodeRequest(request.key(), request.holder(), request.version());
+    }
+
+    @Override
+    protected SynonymsTransferResponse.NodeResponse newNodeResponse(StreamInput in)
+            throws IOException {
+        return new SynonymsTransferResponse.NodeResponse(in);
+    }
+
+    @Override
+    protected SynonymsTransferResponse.NodeResponse nodeOperation(NodeRequest request) {
+        try {
+            return new SynonymsTransferResponse.NodeResponse(
+                    clusterService.localNode(),
+                    synonymMapCache.export(request.key, request.holder, request.version));
+        } catch (Exception e) {
+            throw new OpenSearchException(
+                    "failed to build synonyms from index [" + request.key.index() + "]", e);
+        }
+    }
+
+    /** Asks the building node for the map * */
+    // the nodes action of this version of OpenSearch still requires the deprecated base
+    @SuppressWarnings("deprecation")
+    public static class NodeRequest extends BaseNodeRequest {
+
+        private final SynonymMapCache.Key key;
+        private final String holder;
+        private final String version;
+
+        public NodeRequest(SynonymMapCache.Key key, String holder, String version) {
+            this.key = key;
+            this.holder = holder;
+            this.version = version;
+        }
+
+        public NodeRequest(StreamInput in) throws IOException {
+            super(in);
+            this.key = SynonymsTransferRequest.readKey(in);
+            this.holder = in.readString();
+            this.version = in.readString();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            SynonymsTransferRequest.writeKey(out, key);
+            out.writeString(holder);
+            out.writeString(version);
+        }
+    }
+}
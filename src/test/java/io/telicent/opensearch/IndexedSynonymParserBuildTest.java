@@ -0,0 +1,364 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.StopFilter;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.util.BytesRef;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensearch.common.settings.ClusterSettings;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.core.common.breaker.CircuitBreaker;
+import org.opensearch.core.common.breaker.CircuitBreakingException;
+import org.opensearch.indices.breaker.BreakerSettings;
+import org.opensearch.indices.breaker.HierarchyCircuitBreakerService;
+
+/** Builds synonym maps from rules held in memory, without a cluster * */
+public class IndexedSynonymParserBuildTest {
+
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void startExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    /** Serves a fixed list of rules, one rule per document * */
+    static class InMemoryLoader implements SynonymsLoader {
+        private final List<String> rules;
+
+        InMemoryLoader(List<String> rules) {
+            this.rules = rules;
+        }
+
+        @Override
+        public String version(String index, String query) {
+            // a single shard holding a document per rule
+            return new SynonymsVersion.Shard("uuid", 0, rules.size(), rules.size() - 1, 1)
+                    .toString();
+        }
+
+        @Override
+        public boolean load(
+                String index, String query, String[] fields, int pageSize, PageConsumer consumer)
+                throws Exception {
+            for (int from = 0; from < rules.size(); from += pageSize) {
+                consumer.accept(rules.subList(from, Math.min(from + pageSize, rules.size())));
+            }
+            return true;
+        }
+    }
+
+    /** A breaker of the given limit, as the node would register it * */
+    static CircuitBreaker breaker(long limit) {
+        final Settings settings =
+                Settings.builder().put("indices.breaker.total.use_real_memory", false).build();
+        return new HierarchyCircuitBreakerService(
+                        settings,
+                        List.of(
+                                new BreakerSettings(
+                                        IndexedSynonymsPlugin.BREAKER_NAME, limit, 1.0)),
+                        new ClusterSettings(settings, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS))
+                .getBreaker(IndexedSynonymsPlugin.BREAKER_NAME);
+    }
+
+    private static List<String> rules(int count) {
+        final List<String> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (i % 3 == 0) {
+                rules.add("alpha" + i + ", beta " + i + " => gamma" + (i % 50));
+            } else {
+                rules.add("delta" + i + ", epsilon" + (i % 70) + ", zeta eta" + i);
+            }
+        }
+        return rules;
+    }
+
+    private static SynonymMap build(List<String> rules, ExecutorService executor) throws Exception {
+        final IndexedSynonymParser parser =
+                new IndexedSynonymParser(
+                        new InMemoryLoader(rules),
+                        "synonyms",
+                        null,
+                        new String[0],
+                        1000,
+                        true,
+                        true,
+                        false,
+                        new StandardAnalyzer(),
+                        executor,
+                        4);
+        parser.parse();
+        Assert.assertNull(parser.loadFailure());
+        return parser.build();
+    }
+
+    private static byte[] fstBytes(SynonymMap map) throws Exception {
+        final ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+        map.fst.save(out, out);
+        return out.toArrayCopy();
+    }
+
+    @Test
+    public void parallelBuildIsIdenticalToSerial() throws Exception {
+        final List<String> rules = rules(5000);
+        final SynonymMap serial = build(rules, null);
+        final SynonymMap parallel = build(rules, executor);
+
+        Assert.assertEquals(serial.maxHorizontalContext, parallel.maxHorizontalContext);
+        Assert.assertEquals(serial.words.size(), parallel.words.size());
+        for (int ord = 0; ord < serial.words.size(); ord++) {
+            Assert.assertEquals(
+                    serial.words.get(ord, new BytesRef()), parallel.words.get(ord, new BytesRef()));
+        }
+        Assert.assertArrayEquals(fstBytes(serial), fstBytes(parallel));
+    }
+
+    @Test
+    public void parallelBuildStopsAtFirstInvalidRule() throws Exception {
+        final List<String> rules = rules(2000);
+        rules.set(1500, "a => b => c");
+        final IndexedSynonymParser parser =
+                new IndexedSynonymParser(
+                        new InMemoryLoader(rules),
+                        "synonyms",
+                        null,
+                        new String[0],
+                        1000,
+                        true,
+                        true,
+                        false,
+                        new StandardAnalyzer(),
+                        executor,
+                        4);
+        parser.parse();
+        Assert.assertNotNull(parser.loadFailure());
+    }
+
+    @Test
+    public void oversizedBuildTrips() throws Exception {
+        final CircuitBreaker breaker = breaker(64 * 1024);
+        final IndexedSynonymParser parser =
+                new IndexedSynonymParser(
+                        new InMemoryLoader(rules(5000)),
+                        "synonyms",
+                        null,
+                        new String[0],
+                        500,
+                        true,
+                        true,
+                        false,
+                        new StandardAnalyzer(),
+                        null,
+                        1,
+                        breaker);
+        Assert.assertThrows(CircuitBreakingException.class, parser::parse);
+        Assert.assertEquals(1, breaker.getTrippedCount());
+        Assert.assertEquals(0, breaker.getUsed());
+
+        // charged while parsing, released once built
+        final IndexedSynonymParser small =
+                new IndexedSynonymParser(
+                        new InMemoryLoader(rules(100)),
+                        "synonyms",
+                        null,
+                        new String[0],
+                        50,
+                        true,
+                        true,
+                        false,
+                        new StandardAnalyzer(),
+                        null,
+                        1,
+                        breaker);
+        small.parse();
+        Assert.assertTrue(breaker.getUsed() > 0);
+        small.build();
+        Assert.assertEquals(0, breaker.getUsed());
+    }
+
+    @Test
+    public void checkReportsEveryInvalidRule() throws Exception {
+        final List<String> rules = rules(300);
+        final List<String> valid = new ArrayList<>(rules);
+        rules.set(10, "a => b => c");
+        rules.set(200, "x, => y");
+        valid.remove(200);
+        valid.remove(10);
+        final IndexedSynonymParser parser =
+                new IndexedSynonymParser(
+                        new InMemoryLoader(rules),
+                        "synonyms",
+                        null,
+                        new String[0],
+                        100,
+                        true,
+                        true,
+                        false,
+                        new StandardAnalyzer());
+        parser.check();
+
+        Assert.assertEquals(300, parser.synonymsLoaded());
+        Assert.assertEquals(2, parser.invalidCount());
+        Assert.assertEquals("a => b => c", parser.invalidRules().get(0).rule());
+        Assert.assertTrue(
+                parser.invalidRules().get(0).reason(),
+                parser.invalidRules().get(0).reason().contains("more than one explicit mapping"));
+        Assert.assertEquals("x, => y", parser.invalidRules().get(1).rule());
+        // the valid rules are built as if the invalid ones were not there
+        Assert.assertArrayEquals(fstBytes(build(valid, null)), fstBytes(parser.build()));
+    }
+
+    /** Drops the word "the" and counts the terms it analyses * */
+    private static Analyzer countingAnalyzer(AtomicInteger analysed) {
+        return new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                final Tokenizer tokenizer = new WhitespaceTokenizer();
+                final TokenStream counting =
+                        new TokenFilter(tokenizer) {
+                            @Override
+                            public boolean incrementToken() throws IOException {
+                                return input.incrementToken();
+                            }
+
+                            @Override
+                            public void reset() throws IOException {
+                                super.reset();
+                                analysed.incrementAndGet();
+                            }
+                        };
+                return new TokenStreamComponents(
+                        tokenizer,
+                        new StopFilter(counting, new CharArraySet(List.of("the"), false)));
+            }
+        };
+    }
+
+    @Test
+    public void repeatedTermsAreAnalysedOnce() throws Exception {
+        final List<String> rules = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            rules.add("word" + (i % 20) + ", the, other" + (i % 30));
+        }
+        for (ExecutorService pool : new ExecutorService[] {null, executor}) {
+            final AtomicInteger analysed = new AtomicInteger();
+            final IndexedSynonymParser parser =
+                    new IndexedSynonymParser(
+                            new InMemoryLoader(rules),
+                            "synonyms",
+                            null,
+                            new String[0],
+                            1000,
+                            true,
+                            true,
+                            true,
+                            countingAnalyzer(analysed),
+                            pool,
+                            4);
+            parser.parse();
+            Assert.assertNull(parser.loadFailure());
+            final SynonymMap map = parser.build();
+
+            // 20 + 30 distinct words and the stop word, which concurrent
+            // workers may both analyse before either has cached it
+            if (pool == null) {
+                Assert.assertEquals(51, analysed.get());
+            } else {
+                Assert.assertTrue(String.valueOf(analysed.get()), analysed.get() <= 51 * 4);
+            }
+            // every occurrence of the stop word is still counted
+            Assert.assertEquals(600, parser.lenientSkipped());
+            Assert.assertEquals(50, map.words.size());
+        }
+    }
+
+    @Test
+    public void additionsOnlyWhenAllDocumentsWereAdded() throws Exception {
+        final IndexedSynonymParser parser =
+                new IndexedSynonymParser(
+                        new InMemoryLoader(List.of("ipod => i pod", "lol => laughing out loud")),
+                        "synonyms",
+                        null,
+                        new String[0],
+                        1000,
+                        true,
+                        true,
+                        false,
+                        new StandardAnalyzer());
+
+        // both documents were written since, but one was only updated
+        Assert.assertNull(parser.additions(3, 5, 1));
+
+        final List<IndexedSynonymParser.Mapping> added = parser.additions(3, 5, 2);
+        Assert.assertEquals(2, added.size());
+        Assert.assertEquals("ipod", added.get(0).input().toString());
+        Assert.assertEquals(2, parser.synonymsLoaded());
+    }
+
+    @Test
+    public void noAdditionsOnSeveralShards() throws Exception {
+        final List<String> rules = List.of("ipod => i pod", "lol => laughing out loud");
+        final IndexedSynonymParser parser =
+                new IndexedSynonymParser(
+                        new InMemoryLoader(rules) {
+                            @Override
+                            public String version(String index, String query) {
+                                // one document on each shard
+                                return SynonymsVersion.format(
+                                        List.of(
+                                                new SynonymsVersion.Shard("uuid", 0, 1, 5, 1),
+                                                new SynonymsVersion.Shard("uuid", 1, 1, 4, 1)));
+                            }
+                        },
+                        "synonyms",
+                        null,
+                        new String[0],
+                        1000,
+                        true,
+                        true,
+                        false,
+                        new StandardAnalyzer());
+
+        // a document with a lower sequence number may have been added to the other shard
+        Assert.assertNull(parser.additions(3, 5, 2));
+    }
+
+    @Test
+    public void deltaQueryKeepsTheSelection() {
+        Assert.assertEquals(
+                "{\"bool\":{\"filter\":[{\"range\":{\"_seq_no\":{\"gt\":3,\"lte\":5}}}]}}",
+                IndexedSynonymParser.deltaQuery(null, 3, 5));
+        Assert.assertEquals(
+                "{\"bool\":{\"filter\":[{\"term\":{\"set_id\":\"medical\"}},"
+                        + "{\"range\":{\"_seq_no\":{\"gt\":-1,\"lte\":0}}}]}}",
+                IndexedSynonymParser.deltaQuery("{\"term\":{\"set_id\":\"medical\"}}", -1, 0));
+    }
+}
@@ -33,6 +33,7 @@ import org.opensearch.client.opensearch.OpenSearchClient;
 import org.opensearch.client.opensearch._types.Refresh;
 import org.opensearch.client.transport.OpenSearchTransport;
 import org.opensearch.client.transport.rest_client.RestClientTransport;
+import org.opensearch.common.unit.TimeValue;
 import org.opensearch.testcontainers.OpensearchContainer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -142,13 +143,28 @@ public class IndexedSynonymParserTest {
         }
 
         final StandardAnalyzer standardAnalyzer = new StandardAnalyzer();
+        final RestClientPool clients =
+                new RestClientPool(
+                        TimeValue.timeValueSeconds(5),
+                        TimeValue.timeValueSeconds(60),
+                        10,
+                        3,
+                        TimeValue.timeValueMillis(500),
+                        null,
+                        // the container has a self-signed certificate
+                        true);
         IndexedSynonymParser parser =
                 new IndexedSynonymParser(
-                        container.getHost(),
-                        container.getFirstMappedPort().intValue(),
-                        username,
-                        password,
+                        new RestSynonymsLoader(
+                                clients,
+                                container.getHost(),
+                                container.getFirstMappedPort().intValue(),
+                                username,
+                                password),
                         INDEXNAME,
+                        null,
+                        new String[0],
+                        1,
                         true,
                         true,
                         true,
@@ -157,6 +173,7 @@ public class IndexedSynonymParserTest {
         SynonymMap synonyms = parser.build();
         Assert.assertEquals(7, synonyms.words.size());
 
+        clients.close();
         close();
     }
 }
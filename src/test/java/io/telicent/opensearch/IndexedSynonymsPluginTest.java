@@ -0,0 +1,49 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.threadpool.ExecutorBuilder;
+import org.opensearch.threadpool.FixedExecutorBuilder;
+
+/** Checks which synonym indices and hosts the plugin reads from * */
+public class IndexedSynonymsPluginTest {
+
+    @Test
+    public void onlyAllowedIndicesAreRead() {
+        final IndexedSynonymsPlugin plugin = new IndexedSynonymsPlugin();
+        plugin.checkIndexAllowed(".synonyms");
+        plugin.checkIndexAllowed(".synonyms-medical");
+        for (String index : List.of(".security", "customers", "*", ".syn*")) {
+            Assert.assertThrows(
+                    index, IllegalArgumentException.class, () -> plugin.checkIndexAllowed(index));
+        }
+    }
+
+    @Test
+    public void noRemoteHostByDefault() {
+        final IndexedSynonymsPlugin plugin = new IndexedSynonymsPlugin();
+        Assert.assertThrows(
+                IllegalArgumentException.class,
+                () -> plugin.remoteLoader("169.254.169.254", 80, null, null));
+    }
+
+    @Test
+    public void buildPoolOnlyForParallelBuilds() {
+        final IndexedSynonymsPlugin plugin = new IndexedSynonymsPlugin();
+        Assert.assertEquals(1, plugin.getExecutorBuilders(Settings.EMPTY).size());
+        final List<ExecutorBuilder<?>> builders =
+                plugin.getExecutorBuilders(
+                        Settings.builder().put("plugins.synonyms.parallel_build", true).build());
+        Assert.assertEquals(2, builders.size());
+        Assert.assertTrue(builders.get(1) instanceof FixedExecutorBuilder);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.net.ConnectException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opensearch.client.RestClient;
+import org.opensearch.client.opensearch._types.ErrorResponse;
+import org.opensearch.client.opensearch._types.OpenSearchException;
+import org.opensearch.client.transport.TransportException;
+import org.opensearch.common.unit.TimeValue;
+
+/** Test class for RestClientPool * */
+public class RestClientPoolTest {
+
+    private static RestClientPool pool() {
+        return pool(null);
+    }
+
+    private static RestClientPool pool(Path certificateAuthorities) {
+        return new RestClientPool(
+                TimeValue.timeValueSeconds(1),
+                TimeValue.timeValueSeconds(1),
+                2,
+                3,
+                TimeValue.timeValueMillis(1),
+                certificateAuthorities,
+                false);
+    }
+
+    private static OpenSearchException error(int status) {
+        return new OpenSearchException(
+                ErrorResponse.of(
+                        r -> r.status(status).error(e -> e.type("error").reason("failed"))));
+    }
+
+    @Test
+    public void clientsAreSharedPerCluster() throws Exception {
+        try (RestClientPool pool = pool()) {
+            final RestClient client = pool.client("remote", 9200, null, null);
+            Assert.assertSame(client, pool.client("remote", 9200, null, null));
+            // a missing password means no credentials at all
+            Assert.assertSame(client, pool.client("remote", 9200, "admin", null));
+            Assert.assertNotSame(client, pool.client("remote", 9201, null, null));
+            Assert.assertNotSame(client, pool.client("remote", 9200, "admin", "admin"));
+        }
+    }
+
+    @Test
+    public void unavailableClustersAreTriedAgain() throws Exception {
+        try (RestClientPool pool = pool()) {
+            final AtomicInteger attempts = new AtomicInteger();
+            final String result =
+                    pool.withRetries(
+                            () -> {
+                                if (attempts.incrementAndGet() < 3) {
+                                    throw error(503);
+                                }
+                                return "ok";
+                            });
+            Assert.assertEquals("ok", result);
+            Assert.assertEquals(3, attempts.get());
+
+            // gives up after max_retries
+            attempts.set(0);
+            Assert.assertThrows(
+                    TransportException.class,
+                    () ->
+                            pool.withRetries(
+                                    () -> {
+                                        attempts.incrementAndGet();
+                                        throw new TransportException(
+                                                "failed", new ConnectException("refused"));
+                                    }));
+            Assert.assertEquals(4, attempts.get());
+
+            // errors of the request itself are not
+            attempts.set(0);
+            Assert.assertThrows(
+                    OpenSearchException.class,
+                    () ->
+                            pool.withRetries(
+                                    () -> {
+                                        attempts.incrementAndGet();
+                                        throw error(400);
+                                    }));
+            Assert.assertEquals(1, attempts.get());
+        }
+    }
+
+    @Test
+    public void certificateAuthoritiesAreRead() throws Exception {
+        final Path ca = Path.of(getClass().getClassLoader().getResource("remote-ca.pem").toURI());
+        try (RestClientPool pool = pool(ca)) {
+            Assert.assertNotNull(pool.client("remote", 9200, "admin", "admin"));
+        }
+        // a file without certificates fails straight away rather than on the first request
+        final Path notCa =
+                Path.of(getClass().getClassLoader().getResource("synonyms.json").toURI());
+        Assert.assertThrows(IllegalArgumentException.class, () -> pool(notCa));
+        Assert.assertThrows(
+                IllegalArgumentException.class, () -> pool(ca.resolveSibling("missing.pem")));
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opensearch.core.common.bytes.BytesArray;
+
+/** Checks that both loaders find the same rules in the source of the documents * */
+public class RuleExtractionTest {
+
+    private static final String DOCUMENT =
+            "{\"synonyms\":[\"universe, cosmos\",\"lol => laughing out loud\",[\"ignored\"]],"
+                    + "\"single\":\"tv, television\",\"count\":1,\"missing\":null,"
+                    + "\"meta\":{\"rules\":\"car, automobile\",\"list\":[\"a, b\",{\"c\":\"c, d\"}]}}";
+
+    private static List<String> fromNodeClient(boolean nested) throws Exception {
+        final List<String> rules = new ArrayList<>();
+        NodeClientSynonymsLoader.addRules(new BytesArray(DOCUMENT), nested, rules);
+        return rules;
+    }
+
+    private static List<String> fromRest(boolean nested) throws Exception {
+        return RestSynonymsLoader.mapper(nested)
+                .readValue(DOCUMENT, RestSynonymsLoader.RuleValues.class)
+                .rules();
+    }
+
+    @Test
+    public void topLevelFieldsOnly() throws Exception {
+        final List<String> expected =
+                List.of("universe, cosmos", "lol => laughing out loud", "tv, television", "1");
+        Assert.assertEquals(expected, fromNodeClient(false));
+        Assert.assertEquals(expected, fromRest(false));
+    }
+
+    @Test
+    public void nestedFieldsWhenSelected() throws Exception {
+        final List<String> expected =
+                List.of(
+                        "universe, cosmos",
+                        "lol => laughing out loud",
+                        "tv, television",
+                        "1",
+                        "car, automobile",
+                        "a, b",
+                        "c, d");
+        Assert.assertEquals(expected, fromNodeClient(true));
+        Assert.assertEquals(expected, fromRest(true));
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opensearch.common.settings.Settings;
+
+/** Checks how the filter settings select the synonym documents * */
+public class SynonymGraphTokenFilterFactoryTest {
+
+    private static String query(Settings settings) {
+        return SynonymGraphTokenFilterFactory.query("graph_synonyms", settings);
+    }
+
+    @Test
+    public void allDocumentsByDefault() {
+        Assert.assertNull(query(Settings.EMPTY));
+    }
+
+    @Test
+    public void setIsATermQuery() {
+        Assert.assertEquals(
+                "{\"term\":{\"set_id\":\"medical\"}}",
+                query(Settings.builder().put("set", "medical").build()));
+        Assert.assertEquals(
+                "{\"term\":{\"domain\":\"medical\"}}",
+                query(Settings.builder().put("set", "medical").put("set_field", "domain").build()));
+    }
+
+    @Test
+    public void equivalentQueriesAreNormalised() {
+        Assert.assertEquals(
+                "{\"terms\":{\"set_id\":[\"a\",\"b\"]}}",
+                query(
+                        Settings.builder()
+                                .put("query", "{ \"terms\" : { \"set_id\" : [ \"a\", \"b\" ] } }")
+                                .build()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedQueryIsRejected() {
+        query(Settings.builder().put("query", "{\"term\":").build());
+    }
+
+    @Test
+    public void credentialsAreHashed() {
+        Assert.assertNull(SynonymGraphTokenFilterFactory.credentials(null, null));
+        final String reader = SynonymGraphTokenFilterFactory.credentials("reader", "secret");
+        Assert.assertFalse(reader.contains("secret"));
+        Assert.assertEquals(reader, SynonymGraphTokenFilterFactory.credentials("reader", "secret"));
+        Assert.assertNotEquals(
+                reader, SynonymGraphTokenFilterFactory.credentials("admin", "secret"));
+        Assert.assertNotEquals(
+                reader, SynonymGraphTokenFilterFactory.credentials("reader", "other"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setAndQueryAreExclusive() {
+        query(Settings.builder().put("set", "medical").put("query", "{\"match_all\":{}}").build());
+    }
+}
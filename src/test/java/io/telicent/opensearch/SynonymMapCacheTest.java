@@ -0,0 +1,597 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.CharsRef;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opensearch.core.common.breaker.CircuitBreaker;
+import org.opensearch.core.common.breaker.NoopCircuitBreaker;
+import org.opensearch.core.index.Index;
+
+/** Test class for SynonymMapCache * */
+public class SynonymMapCacheTest {
+
+    private static final Index FIRST = new Index("first", "uuid-1");
+    private static final Index SECOND = new Index("second", "uuid-2");
+
+    private static final SynonymMapCache.Key KEY =
+            new SynonymMapCache.Key(".synonyms", List.of(), null, true, false, true, "chain", null);
+
+    /** Source whose content is changed by the tests * */
+    private static class TestSource implements ReloadableSynonymMap.Source {
+        String version = "1:0";
+        String[] rule = null;
+        boolean unreachable = false;
+        // rules of the documents added since the previous version, if that is all that changed
+        List<IndexedSynonymParser.Mapping> added = null;
+        // rules built into the map on top of the one above
+        final List<IndexedSynonymParser.Mapping> extra = new ArrayList<>();
+        final AtomicInteger builds = new AtomicInteger();
+
+        @Override
+        public String version() {
+            if (unreachable) {
+                throw new IllegalStateException("synonym index unreachable");
+            }
+            return version;
+        }
+
+        @Override
+        public SynonymMap build(ReloadableSynonymMap.BuildInfo info) throws Exception {
+            builds.incrementAndGet();
+            SynonymMap.Builder builder = new SynonymMap.Builder(true);
+            if (rule != null) {
+                builder.add(new CharsRef(rule[0]), new CharsRef(rule[1]), true);
+            }
+            for (IndexedSynonymParser.Mapping mapping : extra) {
+                builder.add(mapping.input(), mapping.output(), mapping.includeOrig());
+            }
+            info.rules(rule == null ? 0 : 1, 0);
+            return builder.build();
+        }
+
+        @Override
+        public List<IndexedSynonymParser.Mapping> additions(String since, String current) {
+            return added;
+        }
+    }
+
+    private static IndexedSynonymParser.Mapping mapping(String input, String output) {
+        return new IndexedSynonymParser.Mapping(
+                new CharsRef(input.replace(' ', SynonymMap.WORD_SEPARATOR)),
+                new CharsRef(output.replace(' ', SynonymMap.WORD_SEPARATOR)),
+                true);
+    }
+
+    @Test
+    public void identicalKeysShareOneMap() throws Exception {
+        final SynonymMapCache cache = new SynonymMapCache();
+        final TestSource source = new TestSource();
+
+        ReloadableSynonymMap first = cache.acquire(KEY, FIRST, source);
+        ReloadableSynonymMap second = cache.acquire(KEY, SECOND, source);
+
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, source.builds.get());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void reusedMapIsCheckedOnTheExecutor() throws Exception {
+        final SynonymMapCache cache = new SynonymMapCache();
+        final TestSource source = new TestSource();
+        final List<Runnable> checks = new ArrayList<>();
+        final ReloadableSynonymMap first =
+                cache.acquire(KEY, FIRST, FIRST, FIRST, source, checks::add);
+        Assert.assertTrue(checks.isEmpty());
+
+        // the cached map is returned as is, without waiting for the synonym index
+        source.unreachable = true;
+        Assert.assertSame(first, cache.acquire(KEY, SECOND, SECOND, SECOND, source, checks::add));
+        Assert.assertEquals(1, checks.size());
+
+        source.unreachable = false;
+        source.version = "2:1";
+        final SynonymMap initial = first.get();
+        checks.get(0).run();
+        Assert.assertNotSame(initial, first.get());
+        Assert.assertEquals(2, source.builds.get());
+    }
+
+    @Test
+    public void evictedWhenLastHolderReleased() throws Exception {
+        final SynonymMapCache cache = new SynonymMapCache();
+        final TestSource source = new TestSource();
+        cache.acquire(KEY, FIRST, source);
+        cache.acquire(KEY, SECOND, source);
+
+        cache.release(FIRST);
+        Assert.assertEquals(1, cache.size());
+        cache.release(SECOND);
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void servicesOfTheSameIndexAreCounted() throws Exception {
+        final SynonymMapCache cache = new SynonymMapCache();
+        final TestSource source = new TestSource();
+        final Object live = new Object();
+        final Object temporary = new Object();
+        final Object liveOwner = new Object();
+        final Object temporaryOwner = new Object();
+        cache.acquire(KEY, FIRST, liveOwner, live, source, Runnable::run);
+        cache.acquire(KEY, FIRST, temporaryOwner, temporary, source, Runnable::run);
+        Assert.assertEquals(List.of("first"), cache.holders(KEY));
+
+        // removing the temporary service keeps the map of the live one
+        cache.release(temporary, true);
+        Assert.assertEquals(1, cache.size());
+        cache.release(temporary, true);
+        Assert.assertEquals(1, cache.size());
+        cache.release(live, true);
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void collectedOwnersAreReleased() throws Exception {
+        final SynonymMapCache cache = new SynonymMapCache();
+        final TestSource source = new TestSource();
+        // a temporary service closed without being released
+        cache.acquire(KEY, FIRST, new Object(), new Object(), source, Runnable::run);
+        Assert.assertEquals(1, source.builds.get());
+
+        for (int i = 0; i < 100 && cache.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void failedLoadIsNotCached() throws Exception {
+        final SynonymMapCache cache = new SynonymMapCache();
+        final TestSource source =
+                new TestSource() {
+                    @Override
+                    public SynonymMap build(ReloadableSynonymMap.BuildInfo info) {
+                        throw new IllegalStateException("boom");
+                    }
+                };
+        try {
+            cache.acquire(KEY, FIRST, source);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void reloadOnlyWhenChanged() throws Exception {
+        final SynonymMapCache cache = new SynonymMapCache();
+        final TestSource source = new TestSource();
+        final ReloadableSynonymMap map = cache.acquire(KEY, FIRST, source);
+        final SynonymMap initial = map.get();
+
+        Assert.assertEquals(0, cache.reloadAll());
+        Assert.assertSame(initial, map.get());
+
+        source.version = "2:1";
+        Assert.assertEquals(1, cache.reloadAll());
+        Assert.assertNotSame(initial, map.get());
+        Assert.assertEquals("2:1", map.version());
+        Assert.assertEquals(2, source.builds.get());
+    }
+
+    @Test
+    public void pinnedMapIsFrozen() throws Exception {
+        final SynonymMapCache.Key pinned =
+                new SynonymMapCache.Key(
+                        ".synonyms", List.of(), null, true, false, true, "chain", "1:0");
+        final SynonymMapCache cache = new SynonymMapCache();
+        final TestSource source = new TestSource();
+        final ReloadableSynonymMap map = cache.acquire(pinned, FIRST, source);
+        final SynonymMap initial = map.get();
+
+        source.version = "2:1";
+        Assert.assertEquals(0, cache.reloadAll());
+        Assert.assertSame(initial, map.get());
+        Assert.assertEquals("1:0", map.version());
+        Assert.assertEquals(1, source.builds.get());
+
+        // the pinned version cannot be built anymore
+        final SynonymMapCache other = new SynonymMapCache();
+        Assert.assertThrows(
+                IllegalStateException.class, () -> other.acquire(pinned, FIRST, source));
+        Assert.assertEquals(0, other.size());
+    }
+
+    /** Lets a cache get its maps from another one, as if they were on different nodes * */
+    private static SynonymMapTransfer from(SynonymMapCache builder) {
+        return new SynonymMapTransfer() {
+            @Override
+            public boolean builds(SynonymMapCache.Key key, String holder) {
+                return false;
+            }
+
+            @Override
+            public SynonymMap fetch(SynonymMapCache.Key key, String version) {
+                try {
+                    final byte[] bytes = builder.export(key, FIRST.getName(), version);
+                    return bytes == null ? null : SynonymMapSnapshots.deserialize(bytes, version);
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        };
+    }
+
+    @Test
+    public void mapsAreBuiltOnceForTheCluster() throws Exception {
+        final SynonymMapCache builder = new SynonymMapCache();
+        final SynonymMapCache follower =
+                new SynonymMapCache(
+                        SynonymMapSnapshots.NONE,
+                        from(builder),
+                        new NoopCircuitBreaker(IndexedSynonymsPlugin.BREAKER_NAME),
+                        0,
+                        0);
+        final TestSource built = new TestSource();
+        built.rule = new String[] {"lol", "laughing"};
+        final TestSource received = new TestSource();
+        received.rule = built.rule;
+
+        // the building node does not hold the map yet
+        follower.acquire(KEY, FIRST, received);
+        Assert.assertEquals(1, received.builds.get());
+
+        builder.acquire(KEY, FIRST, built);
+        built.version = "2:1";
+        received.version = "2:1";
+        // a building node behind the requested version does not build the map for the request
+        Assert.assertNull(builder.export(KEY, FIRST.getName(), "2:1"));
+        Assert.assertEquals(1, built.builds.get());
+
+        // the map is sent once the building node has caught up
+        Assert.assertEquals(1, builder.reloadAll());
+        Assert.assertEquals(1, follower.reloadAll());
+        Assert.assertEquals(2, built.builds.get());
+        Assert.assertEquals(1, received.builds.get());
+        Assert.assertEquals("2:1", builder.stats().get(0).version());
+        final SynonymMapStats stats = follower.stats().get(0);
+        Assert.assertEquals("2:1", stats.version());
+        Assert.assertTrue(stats.restored());
+        Assert.assertEquals(1, stats.words());
+
+        // nothing is sent for any other version
+        Assert.assertNull(builder.export(KEY, FIRST.getName(), "1:0"));
+    }
+
+    @Test
+    public void heldMapsAreChargedToTheBreaker() throws Exception {
+        final CircuitBreaker breaker = IndexedSynonymParserBuildTest.breaker(1024 * 1024);
+        final SynonymMapCache cache =
+                new SynonymMapCache(
+                        SynonymMapSnapshots.NONE, SynonymMapTransfer.NONE, breaker, 0, 0);
+        final TestSource source = new TestSource();
+        source.rule = new String[] {"lol", "laughing"};
+        final ReloadableSynonymMap map = cache.acquire(KEY, FIRST, source);
+        Assert.assertEquals(ReloadableSynonymMap.sizeOf(map.get()), breaker.getUsed());
+
+        // so is the copy kept for other nodes
+        final byte[] exported = cache.export(KEY, FIRST.getName(), "1:0");
+        Assert.assertSame(exported, cache.export(KEY, FIRST.getName(), "1:0"));
+        Assert.assertEquals(
+                ReloadableSynonymMap.sizeOf(map.get()) + exported.length, breaker.getUsed());
+
+        // the previous map and its copy are not held anymore once swapped
+        source.rule = new String[] {"lol", "laughing out loud"};
+        source.version = "2:1";
+        cache.reloadAll();
+        Assert.assertEquals(ReloadableSynonymMap.sizeOf(map.get()), breaker.getUsed());
+
+        cache.export(KEY, FIRST.getName(), "2:1");
+
+        cache.release(FIRST);
+        Assert.assertEquals(0, breaker.getUsed());
+    }
+
+    @Test
+    public void reusedStreamsPickUpReloadedMap() throws Exception {
+        final SynonymMapCache cache = new SynonymMapCache();
+        final TestSource source = new TestSource();
+        final ReloadableSynonymMap map = cache.acquire(KEY, FIRST, source);
+
+        final Analyzer analyzer = analyzer(map);
+
+        Assert.assertEquals(List.of("universe"), terms(analyzer, "universe"));
+
+        source.version = "2:1";
+        source.rule = new String[] {"universe", "cosmos"};
+        cache.reloadAll();
+
+        Assert.assertEquals(List.of("cosmos", "universe"), terms(analyzer, "universe"));
+        analyzer.close();
+    }
+
+    @Test
+    public void statsFollowReloadsAndErrors() throws Exception {
+        final SynonymMapCache cache = new SynonymMapCache();
+        final TestSource source = new TestSource();
+        cache.acquire(KEY, FIRST, source);
+        cache.acquire(KEY, SECOND, source);
+
+        SynonymMapStats stats = cache.stats().get(0);
+        Assert.assertEquals(".synonyms", stats.index());
+        Assert.assertEquals(List.of("first", "second"), stats.indices());
+        Assert.assertTrue(stats.ready());
+        Assert.assertEquals("1:0", stats.version());
+        Assert.assertEquals(0, stats.rules());
+        Assert.assertEquals(0, stats.reloads());
+        Assert.assertTrue(stats.lastReload() > 0);
+        Assert.assertNull(stats.lastError());
+
+        source.version = "2:1";
+        source.rule = new String[] {"universe", "cosmos"};
+        cache.reloadAll();
+        stats = cache.stats().get(0);
+        Assert.assertEquals(1, stats.rules());
+        Assert.assertEquals(1, stats.reloads());
+        Assert.assertEquals(1, stats.words());
+        Assert.assertTrue(stats.fstBytes() > 0);
+
+        // the previous map is kept but the failure is reported
+        source.unreachable = true;
+        Assert.assertEquals(0, cache.reloadAll());
+        stats = cache.stats().get(0);
+        Assert.assertEquals("2:1", stats.version());
+        Assert.assertTrue(stats.lastError().contains("synonym index unreachable"));
+
+        source.unreachable = false;
+        source.version = "3:2";
+        cache.reloadAll();
+        Assert.assertNull(cache.stats().get(0).lastError());
+    }
+
+    @Test
+    public void asyncLoadPassesThroughUntilReady() throws Exception {
+        final SynonymMapCache cache = new SynonymMapCache();
+        final TestSource source = new TestSource();
+        source.rule = new String[] {"universe", "cosmos"};
+        final List<Runnable> pending = new ArrayList<>();
+
+        final ReloadableSynonymMap map = cache.acquireAsync(KEY, FIRST, source, pending::add);
+        Assert.assertFalse(map.isReady());
+        Assert.assertFalse(map.awaitReady(1, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(cache.stats().get(0).ready());
+        Assert.assertEquals(0, source.builds.get());
+
+        final Analyzer analyzer = analyzer(map);
+        Assert.assertEquals(List.of("universe"), terms(analyzer, "universe"));
+
+        // another index asking for the map while it loads does not load it again
+        Assert.assertSame(map, cache.acquireAsync(KEY, SECOND, source, pending::add));
+        Assert.assertEquals(1, pending.size());
+
+        pending.remove(0).run();
+        Assert.assertTrue(map.isReady());
+        Assert.assertTrue(map.awaitReady(0, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(cache.stats().get(0).ready());
+        Assert.assertEquals(List.of("cosmos", "universe"), terms(analyzer, "universe"));
+        analyzer.close();
+    }
+
+    @Test
+    public void asyncLoadFailureIsRetriedOnReload() throws Exception {
+        final SynonymMapCache cache = new SynonymMapCache();
+        final TestSource source = new TestSource();
+        source.unreachable = true;
+
+        final ReloadableSynonymMap map = cache.acquireAsync(KEY, FIRST, source, Runnable::run);
+        Assert.assertFalse(map.isReady());
+        Assert.assertEquals(1, cache.size());
+        Assert.assertTrue(cache.stats().get(0).lastError().contains("synonym index unreachable"));
+
+        source.unreachable = false;
+        Assert.assertEquals(1, cache.reloadAll());
+        Assert.assertTrue(map.isReady());
+        Assert.assertNull(cache.stats().get(0).lastError());
+    }
+
+    @Test
+    public void cachedExpansionsReplayTheSameGraph() throws Exception {
+        final TestSource source = new TestSource();
+        // a multi word synonym gives a graph spanning several positions
+        source.rule = new String[] {"ipod", "i" + SynonymMap.WORD_SEPARATOR + "pod"};
+        final ReloadableSynonymMap plain = new SynonymMapCache().acquire(KEY, FIRST, source);
+        final SynonymMapCache cache = new SynonymMapCache(SynonymMapSnapshots.NONE, 100);
+        final ReloadableSynonymMap cached = cache.acquire(KEY, FIRST, source);
+
+        final Analyzer expected = analyzer(plain);
+        final Analyzer actual = analyzer(cached);
+        for (String text : new String[] {"my ipod", "my ipod", "ipod", "", "my ipod"}) {
+            Assert.assertEquals(graph(expected, text), graph(actual, text));
+        }
+        SynonymMapStats stats = cache.stats().get(0);
+        Assert.assertEquals(2, stats.expansionEntries());
+        Assert.assertEquals(2, stats.expansionHits());
+        Assert.assertEquals(2, stats.expansionMisses());
+
+        // the cached graphs are dropped along with the map they come from
+        source.version = "2:1";
+        source.rule = new String[] {"ipod", "player"};
+        cache.reloadAll();
+        Assert.assertEquals(0, cache.stats().get(0).expansionEntries());
+        Assert.assertEquals(List.of("player", "ipod"), terms(actual, "ipod"));
+        Assert.assertEquals(3, cache.stats().get(0).expansionMisses());
+        Assert.assertNull(plain.expansions());
+        expected.close();
+        actual.close();
+    }
+
+    @Test
+    public void longInputsAreStreamed() throws Exception {
+        final TestSource source = new TestSource();
+        source.rule = new String[] {"ipod", "i" + SynonymMap.WORD_SEPARATOR + "pod"};
+        final ReloadableSynonymMap plain = new SynonymMapCache().acquire(KEY, FIRST, source);
+        final SynonymMapCache cache = new SynonymMapCache(SynonymMapSnapshots.NONE, 100);
+        final ReloadableSynonymMap cached = cache.acquire(KEY, FIRST, source);
+
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < SynonymExpansionCache.MAX_TOKENS + 10; i++) {
+            text.append(i % 3 == 0 ? "my " : "ipod ");
+        }
+        final Analyzer expected = analyzer(plain);
+        final Analyzer actual = analyzer(cached);
+        Assert.assertEquals(graph(expected, text.toString()), graph(actual, text.toString()));
+        Assert.assertEquals(graph(expected, text.toString()), graph(actual, text.toString()));
+        // short inputs are still cached once a long one has been streamed
+        Assert.assertEquals(graph(expected, "my ipod"), graph(actual, "my ipod"));
+        SynonymMapStats stats = cache.stats().get(0);
+        Assert.assertEquals(1, stats.expansionEntries());
+        Assert.assertEquals(1, stats.expansionMisses());
+
+        // nor is anything cached for documents being indexed
+        final Analyzer indexing = analyzer(cached, true);
+        Assert.assertEquals(graph(expected, "my ipod ipod"), graph(indexing, "my ipod ipod"));
+        stats = cache.stats().get(0);
+        Assert.assertEquals(1, stats.expansionEntries());
+        Assert.assertEquals(1, stats.expansionMisses());
+        expected.close();
+        actual.close();
+        indexing.close();
+    }
+
+    @Test
+    public void addedRulesAreOverlaid() throws Exception {
+        final TestSource source = new TestSource();
+        source.rule = new String[] {"universe", "cosmos"};
+        final SynonymMapCache cache = new SynonymMapCache(SynonymMapSnapshots.NONE, 0, 3);
+        final ReloadableSynonymMap map = cache.acquire(KEY, FIRST, source);
+        final SynonymMap base = map.get();
+        final Analyzer actual = analyzer(map);
+
+        // a rule for a new word and one for a word the map already has
+        source.version = "3:2";
+        source.added = List.of(mapping("ipod", "i pod"), mapping("universe", "world"));
+        Assert.assertEquals(1, cache.reloadAll());
+        Assert.assertSame(base, map.get());
+        Assert.assertEquals(1, source.builds.get());
+        Assert.assertEquals(2, cache.stats().get(0).overlayMappings());
+
+        // the expansions are those of a map built from all the rules
+        source.extra.addAll(source.added);
+        final Analyzer expected = analyzer(new SynonymMapCache().acquire(KEY, SECOND, source));
+        for (String text :
+                new String[] {"my ipod", "universe", "the universe of ipod", "nothing", ""}) {
+            Assert.assertEquals(graph(expected, text), graph(actual, text));
+        }
+        // the combined map of a query is built once, with the added rules which may match it
+        final SynonymOverlay overlay = map.overlay();
+        final SynonymMap combined = overlay.combine(List.of("my", "ipod"));
+        Assert.assertSame(combined, overlay.combine(new ArrayList<>(List.of("my", "ipod"))));
+        Assert.assertEquals(1, combined.words.size());
+
+        // past the limit the map is rebuilt with all the rules
+        source.version = "5:4";
+        source.added =
+                List.of(mapping("lol", "laughing out loud"), mapping("brb", "be right back"));
+        source.extra.addAll(source.added);
+        Assert.assertEquals(1, cache.reloadAll());
+        Assert.assertNotSame(base, map.get());
+        Assert.assertNull(map.overlay());
+        Assert.assertEquals(3, source.builds.get());
+        Assert.assertEquals(0, cache.stats().get(0).overlayMappings());
+        Assert.assertEquals(
+                List.of("laughing", "lol", "out", "loud", "cosmos", "world", "universe"),
+                terms(actual, "lol universe"));
+
+        // any other change rebuilds the map
+        source.version = "5:5";
+        source.added = null;
+        Assert.assertEquals(1, cache.reloadAll());
+        Assert.assertEquals(4, source.builds.get());
+        expected.close();
+        actual.close();
+    }
+
+    private static Analyzer analyzer(ReloadableSynonymMap map) {
+        return analyzer(map, false);
+    }
+
+    private static Analyzer analyzer(ReloadableSynonymMap map, boolean indexTime) {
+        return new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                Tokenizer tokenizer = new WhitespaceTokenizer();
+                return new TokenStreamComponents(
+                        tokenizer, new ReloadableSynonymGraphFilter(tokenizer, map, indexTime));
+            }
+        };
+    }
+
+    /** Describes every attribute of the tokens which a cached graph must reproduce * */
+    private static List<String> graph(Analyzer analyzer, String text) throws Exception {
+        final List<String> tokens = new ArrayList<>();
+        try (TokenStream stream = analyzer.tokenStream("field", new StringReader(text))) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            PositionIncrementAttribute posInc =
+                    stream.addAttribute(PositionIncrementAttribute.class);
+            PositionLengthAttribute posLen = stream.addAttribute(PositionLengthAttribute.class);
+            OffsetAttribute offset = stream.addAttribute(OffsetAttribute.class);
+            TypeAttribute type = stream.addAttribute(TypeAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                tokens.add(
+                        term
+                                + "/"
+                                + posInc.getPositionIncrement()
+                                + "/"
+                                + posLen.getPositionLength()
+                                + "/"
+                                + offset.startOffset()
+                                + "-"
+                                + offset.endOffset()
+                                + "/"
+                                + type.type());
+            }
+            stream.end();
+            tokens.add("end " + offset.endOffset());
+        }
+        return tokens;
+    }
+
+    private static List<String> terms(Analyzer analyzer, String text) throws Exception {
+        final List<String> terms = new ArrayList<>();
+        try (TokenStream stream = analyzer.tokenStream("field", new StringReader(text))) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                terms.add(term.toString());
+            }
+            stream.end();
+        }
+        return terms;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.util.List;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.fst.Util;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opensearch.Version;
+
+/** Test class for SynonymMapSnapshots * */
+public class SynonymMapSnapshotsTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final SynonymMapCache.Key KEY =
+            new SynonymMapCache.Key(".synonyms", List.of(), null, true, false, true, "chain", null);
+
+    private static SynonymMap map() throws Exception {
+        SynonymMap.Builder builder = new SynonymMap.Builder(true);
+        builder.add(new CharsRef("universe"), new CharsRef("cosmos"), true);
+        builder.add(new CharsRef("lol"), new CharsRef("laughing out loud"), true);
+        return builder.build();
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        final SynonymMap original = map();
+        try (SynonymMapSnapshots snapshots = SynonymMapSnapshots.open(folder.getRoot().toPath())) {
+            snapshots.write(KEY, "2:1", original);
+
+            final SynonymMap restored = snapshots.read(KEY, "2:1");
+            Assert.assertNotNull(restored);
+            Assert.assertEquals(original.maxHorizontalContext, restored.maxHorizontalContext);
+            Assert.assertEquals(original.words.size(), restored.words.size());
+            for (int ord = 0; ord < original.words.size(); ord++) {
+                Assert.assertEquals(
+                        original.words.get(ord, new BytesRef()),
+                        restored.words.get(ord, new BytesRef()));
+            }
+            // the FST is keyed on UTF-32 code points
+            for (String input : new String[] {"universe", "lol", "cosmos"}) {
+                IntsRef codePoints = Util.toUTF32(input, new IntsRefBuilder());
+                Assert.assertEquals(
+                        Util.get(original.fst, codePoints), Util.get(restored.fst, codePoints));
+            }
+            Assert.assertNotNull(
+                    Util.get(restored.fst, Util.toUTF32("universe", new IntsRefBuilder())));
+        }
+    }
+
+    @Test
+    public void staleSnapshotIsIgnored() throws Exception {
+        try (SynonymMapSnapshots snapshots = SynonymMapSnapshots.open(folder.getRoot().toPath())) {
+            snapshots.write(KEY, "2:1", map());
+            Assert.assertNull(snapshots.read(KEY, "3:2"));
+            // and deleted as the index moved past it
+            Assert.assertNull(snapshots.read(KEY, "2:1"));
+        }
+    }
+
+    @Test
+    public void snapshotsOfOtherVersionsOfOpenSearchAreIgnored() throws Exception {
+        final String name = SynonymMapSnapshots.fileName(KEY);
+        try (Directory directory = FSDirectory.open(folder.getRoot().toPath());
+                IndexOutput out = directory.createOutput(name, IOContext.DEFAULT)) {
+            CodecUtil.writeHeader(out, "telicent_synonyms", 1);
+            out.writeVInt(Version.CURRENT.id - 1);
+            out.writeString(org.apache.lucene.util.Version.LATEST.toString());
+            out.writeString("2:1");
+            CodecUtil.writeFooter(out);
+        }
+        try (SynonymMapSnapshots snapshots = SynonymMapSnapshots.open(folder.getRoot().toPath())) {
+            Assert.assertNull(snapshots.read(KEY, "2:1"));
+        }
+        Assert.assertFalse(folder.getRoot().toPath().resolve(name).toFile().exists());
+    }
+
+    @Test
+    public void evictedAndSupersededSnapshotsAreDeleted() throws Exception {
+        final SynonymMapCache.Key first =
+                new SynonymMapCache.Key(
+                        ".synonyms", List.of(), null, true, false, true, "chain", "a/0:2:1:1");
+        final SynonymMapCache.Key second =
+                new SynonymMapCache.Key(
+                        ".synonyms", List.of(), null, true, false, true, "chain", "a/0:3:2:1");
+        try (SynonymMapSnapshots snapshots = SynonymMapSnapshots.open(folder.getRoot().toPath())) {
+            snapshots.write(KEY, "a/0:3:2:1", map());
+            snapshots.write(first, "a/0:2:1:1", map());
+            snapshots.write(second, "a/0:3:2:1", map());
+
+            // another index pins the same map to a newer version
+            snapshots.deleteSuperseded(second, List.of(KEY, second));
+            Assert.assertNull(snapshots.read(first, "a/0:2:1:1"));
+            Assert.assertNotNull(snapshots.read(second, "a/0:3:2:1"));
+            Assert.assertNotNull(snapshots.read(KEY, "a/0:3:2:1"));
+
+            snapshots.delete(second);
+            Assert.assertNull(snapshots.read(second, "a/0:3:2:1"));
+            Assert.assertNotNull(snapshots.read(KEY, "a/0:3:2:1"));
+        }
+    }
+
+    @Test
+    public void credentialsAreSnapshottedApart() {
+        final SynonymMapCache.Key reader =
+                new SynonymMapCache.Key(
+                        "remote:9200/.synonyms",
+                        SynonymGraphTokenFilterFactory.credentials("reader", "secret"),
+                        List.of(),
+                        null,
+                        true,
+                        false,
+                        true,
+                        "chain",
+                        null);
+        final SynonymMapCache.Key admin =
+                new SynonymMapCache.Key(
+                        "remote:9200/.synonyms",
+                        SynonymGraphTokenFilterFactory.credentials("admin", "secret"),
+                        List.of(),
+                        null,
+                        true,
+                        false,
+                        true,
+                        "chain",
+                        null);
+        Assert.assertNotEquals(reader, admin);
+        Assert.assertNotEquals(
+                SynonymMapSnapshots.fileName(reader), SynonymMapSnapshots.fileName(admin));
+    }
+
+    @Test
+    public void emptyMap() throws Exception {
+        try (SynonymMapSnapshots snapshots = SynonymMapSnapshots.open(folder.getRoot().toPath())) {
+            snapshots.write(KEY, "0:-1", new SynonymMap.Builder().build());
+            final SynonymMap restored = snapshots.read(KEY, "0:-1");
+            Assert.assertNotNull(restored);
+            Assert.assertNull(restored.fst);
+        }
+    }
+
+    @Test
+    public void transferredMapsAreChecksummed() throws Exception {
+        final byte[] bytes = SynonymMapSnapshots.serialize("2:1", map());
+        final SynonymMap received = SynonymMapSnapshots.deserialize(bytes, "2:1");
+        Assert.assertNotNull(
+                Util.get(received.fst, Util.toUTF32("universe", new IntsRefBuilder())));
+        Assert.assertNull(SynonymMapSnapshots.deserialize(bytes, "3:2"));
+
+        bytes[bytes.length / 2] ^= 0x5a;
+        Assert.assertThrows(
+                CorruptIndexException.class, () -> SynonymMapSnapshots.deserialize(bytes, "2:1"));
+    }
+}
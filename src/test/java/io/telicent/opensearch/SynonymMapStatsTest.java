@@ -0,0 +1,74 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opensearch.common.io.stream.BytesStreamOutput;
+import org.opensearch.common.xcontent.XContentFactory;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.xcontent.ToXContent;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+/** Test class for SynonymMapStats * */
+public class SynonymMapStatsTest {
+
+    private static SynonymMapStats stats(String version, long rules, String lastError) {
+        return new SynonymMapStats(
+                ".synonyms",
+                null,
+                true,
+                false,
+                List.of("products", "reviews"),
+                version != null,
+                version,
+                false,
+                rules < 0,
+                rules,
+                3,
+                1024,
+                12,
+                256,
+                40,
+                15,
+                1700000000000L,
+                1,
+                lastError,
+                5,
+                lastError == null ? 10 : -1,
+                90,
+                10);
+    }
+
+    @Test
+    public void serialization() throws Exception {
+        for (SynonymMapStats original :
+                new SynonymMapStats[] {stats("7:6", 42, null), stats(null, -1, "boom")}) {
+            try (BytesStreamOutput out = new BytesStreamOutput()) {
+                original.writeTo(out);
+                try (StreamInput in = out.bytes().streamInput()) {
+                    Assert.assertEquals(original, new SynonymMapStats(in));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void restoredMapsHaveNoRuleCount() throws Exception {
+        final XContentBuilder builder = XContentFactory.jsonBuilder();
+        stats("7:6", -1, null).toXContent(builder, ToXContent.EMPTY_PARAMS);
+        final String json = builder.toString();
+        Assert.assertFalse(json, json.contains("\"rules\""));
+        Assert.assertTrue(json, json.contains("\"fst_size_in_bytes\":1024"));
+        Assert.assertTrue(json, json.contains("\"last_reload_in_millis\":1700000000000"));
+        Assert.assertTrue(
+                json,
+                json.contains("\"expansion_cache\":{\"entries\":10,\"hits\":90,\"misses\":10}"));
+    }
+}
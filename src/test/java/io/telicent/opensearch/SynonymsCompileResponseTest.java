@@ -0,0 +1,78 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opensearch.common.io.stream.BytesStreamOutput;
+import org.opensearch.common.xcontent.XContentFactory;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.xcontent.ToXContent;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+/** Test class for SynonymsCompileRequest and SynonymsCompileResponse * */
+public class SynonymsCompileResponseTest {
+
+    private static String json(SynonymsCompileResponse response) throws Exception {
+        final XContentBuilder builder = XContentFactory.jsonBuilder();
+        response.toXContent(builder, ToXContent.EMPTY_PARAMS);
+        return builder.toString();
+    }
+
+    @Test
+    public void serialization() throws Exception {
+        final SynonymsCompileResponse original =
+                new SynonymsCompileResponse(
+                        "synonyms",
+                        ".synonyms",
+                        42,
+                        1,
+                        List.of(
+                                new IndexedSynonymParser.InvalidRule(
+                                        "a => b => c",
+                                        "more than one explicit mapping specified on the same line")),
+                        0,
+                        1024,
+                        12,
+                        256,
+                        40,
+                        15);
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            original.writeTo(out);
+            try (StreamInput in = out.bytes().streamInput()) {
+                Assert.assertEquals(json(original), json(new SynonymsCompileResponse(in)));
+            }
+        }
+        final String json = json(original);
+        Assert.assertTrue(json, json.contains("\"valid\":false"));
+        Assert.assertTrue(json, json.contains("\"invalid_rules\":[{\"rule\":\"a => b => c\""));
+        Assert.assertTrue(json, json.contains("\"fst_size_in_bytes\":1024"));
+    }
+
+    @Test
+    public void requestSerialization() throws Exception {
+        for (SynonymsCompileRequest original :
+                new SynonymsCompileRequest[] {
+                    new SynonymsCompileRequest("products", "search", null, null),
+                    new SynonymsCompileRequest("products", "search", "synonyms", List.of("a, b"))
+                }) {
+            try (BytesStreamOutput out = new BytesStreamOutput()) {
+                original.writeTo(out);
+                try (StreamInput in = out.bytes().streamInput()) {
+                    final SynonymsCompileRequest read = new SynonymsCompileRequest(in);
+                    Assert.assertEquals(original.index(), read.index());
+                    Assert.assertEquals(original.analyzer(), read.analyzer());
+                    Assert.assertEquals(original.filter(), read.filter());
+                    Assert.assertEquals(original.rules(), read.rules());
+                }
+            }
+        }
+        Assert.assertNotNull(new SynonymsCompileRequest("products", null, null, null).validate());
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Telicent require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+package io.telicent.opensearch;
+
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Test class for SynonymsVersion * */
+public class SynonymsVersionTest {
+
+    @Test
+    public void shardsAreFormattedInAStableOrder() {
+        final SynonymsVersion.Shard first = new SynonymsVersion.Shard("Ab-c_1", 0, 3, 7, 1);
+        final SynonymsVersion.Shard second = new SynonymsVersion.Shard("Ab-c_1", 1, 0, -1, 0);
+        final String version = SynonymsVersion.format(List.of(second, first));
+
+        Assert.assertEquals("Ab-c_1/0:3:7:1,Ab-c_1/1:0:-1:0", version);
+        Assert.assertEquals(List.of(first, second), SynonymsVersion.parse(version));
+        Assert.assertEquals(3, SynonymsVersion.count(version));
+    }
+
+    @Test
+    public void recreatedIndexHasAnotherVersion() {
+        // same documents, same sequence numbers, but another index
+        Assert.assertNotEquals(
+                SynonymsVersion.format(List.of(new SynonymsVersion.Shard("old", 0, 5, 4, 1))),
+                SynonymsVersion.format(List.of(new SynonymsVersion.Shard("new", 0, 5, 4, 1))));
+    }
+
+    @Test
+    public void otherFormatsAreNotParsed() {
+        Assert.assertNull(SynonymsVersion.parse("5:4"));
+        Assert.assertNull(SynonymsVersion.parse(null));
+        Assert.assertEquals(-1, SynonymsVersion.count("5:4"));
+    }
+}